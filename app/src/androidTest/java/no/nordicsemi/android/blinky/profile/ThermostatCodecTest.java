@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.content.res.Resources;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ThermostatCodecTest {
+	private Resources mResources;
+	private ThermostatCodec mCodec;
+
+	@Before
+	public void setUp() {
+		mResources = InstrumentationRegistry.getTargetContext().getResources();
+		mCodec = new ThermostatCodec(mResources);
+	}
+
+	@Test
+	public void codes_matchResources() {
+		for (final ThermostatCommand command : ThermostatCommand.values()) {
+			final int expected = mResources.getInteger(command.getResId());
+			assertEquals(command.name(), expected, mCodec.getCode(command));
+			assertArrayEquals(command.name(), new byte[] { (byte) expected }, mCodec.encode(command));
+		}
+	}
+
+	@Test
+	public void codes_fitInSignedByte() {
+		// See the note in Thermostat_Integer.xml
+		for (final ThermostatCommand command : ThermostatCommand.values()) {
+			final int code = mCodec.getCode(command);
+			assertTrue(command.name(), code >= 0 && code <= Byte.MAX_VALUE);
+		}
+	}
+
+	@Test
+	public void decode_returnsEncodedCommand() {
+		for (final ThermostatCommand command : ThermostatCommand.values()) {
+			final byte[] payload = mCodec.encode(command);
+			assertSame(command, mCodec.decode(payload[0] & 0xFF));
+		}
+	}
+
+	@Test
+	public void decode_unknownValue_returnsNull() {
+		assertNull(mCodec.decode(0));
+		assertNull(mCodec.decode(0xFF));
+	}
+
+	@Test
+	public void encode_doesNotAllocate() {
+		for (final ThermostatCommand command : ThermostatCommand.values()) {
+			assertSame(mCodec.encode(command), mCodec.encode(command));
+		}
+	}
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Tests of {@link AdvertisingData}, including that the name change detection done for every
+ * received packet does not allocate, unlike decoding the name into a new String as
+ * {@code ScanRecord#getDeviceName()} does.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AdvertisingDataTest {
+	private static final int ITERATIONS = 1000;
+	private static final String NAME = "THERMOSTAT";
+
+	/** Flags, 16-bit UUID FF01, manufacturer data of Nordic (0x0059) and the complete name. */
+	private static final byte[] PACKET = {
+			0x02, 0x01, 0x06,
+			0x03, 0x03, 0x01, (byte) 0xFF,
+			0x05, (byte) 0xFF, 0x59, 0x00, 0x01, 0x02,
+			0x0B, 0x09, 'T', 'H', 'E', 'R', 'M', 'O', 'S', 'T', 'A', 'T',
+			0x00, 0x00
+	};
+
+	@Test
+	public void parse_findsStructures() {
+		final AdvertisingData data = new AdvertisingData();
+		assertTrue(data.parse(PACKET));
+		assertEquals(NAME, data.getName());
+		assertTrue(data.nameEquals(NAME));
+		assertFalse(data.nameEquals("THERMOSTAX"));
+		assertFalse(data.nameEquals(null));
+		assertTrue(data.hasServiceUuid(0xFF01));
+		assertFalse(data.hasServiceUuid(0xFF02));
+		assertEquals(1, data.getServiceUuid16Count());
+		assertEquals(0xFF01, data.getServiceUuid16(0));
+		assertEquals(0x0059, data.getManufacturerId());
+		assertEquals(2, data.getManufacturerDataLength());
+		assertEquals(0x01, PACKET[data.getManufacturerDataOffset()]);
+	}
+
+	@Test
+	public void parse_malformed_returnsFalse() {
+		final AdvertisingData data = new AdvertisingData();
+		assertFalse(data.parse(new byte[] { 0x05, 0x09, 'A' }));
+		assertFalse(data.hasName());
+		assertFalse(data.parse(null));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void nameChangeDetection_doesNotAllocate() {
+		final Charset utf8 = Charset.forName("UTF-8");
+		final AdvertisingData data = new AdvertisingData();
+		int changes = 0;
+		// Classes used below are loaded before counting
+		changes += NAME.equals(new String(PACKET, 15, 10, utf8)) ? 0 : 1;
+		data.parse(PACKET);
+		changes += data.nameEquals(NAME) && data.hasServiceUuid(0xFF01) ? 0 : 1;
+
+		// Decoding a new String for every packet allocates, which shows that counting works
+		Debug.resetThreadAllocCount();
+		Debug.startAllocCounting();
+		try {
+			for (int i = 0; i < ITERATIONS; i++)
+				changes += NAME.equals(new String(PACKET, 15, 10, utf8)) ? 0 : 1;
+			final int decodeAllocations = Debug.getThreadAllocCount();
+
+			// Parsing the whole packet and comparing the name in place
+			Debug.resetThreadAllocCount();
+			for (int i = 0; i < ITERATIONS; i++) {
+				data.parse(PACKET);
+				changes += data.nameEquals(NAME) && data.hasServiceUuid(0xFF01) ? 0 : 1;
+			}
+			final int inPlaceAllocations = Debug.getThreadAllocCount();
+
+			assumeTrue("Allocation counting not supported", decodeAllocations >= ITERATIONS);
+			assertEquals(0, inPlaceAllocations);
+		} finally {
+			Debug.stopAllocCounting();
+		}
+		assertEquals(0, changes);
+	}
+}
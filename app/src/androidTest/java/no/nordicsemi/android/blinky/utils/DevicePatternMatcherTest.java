@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.utils;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class DevicePatternMatcherTest {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final String[] PATTERNS = {
+			"name:THERMOSTAT",
+			"prefix:THERMOSTAT-",
+			"prefix:TSTAT_",
+			"manufacturer:0x0059",
+			"name:Ä-Gerät"
+	};
+
+	private final DevicePatternMatcher mMatcher = DevicePatternMatcher.compile(PATTERNS);
+
+	@Test
+	public void matchesName_exactNamesAndPrefixes() {
+		for (final String name : new String[] { "THERMOSTAT", "THERMOSTAT-2", "TSTAT_12", "TSTAT_", "Ä-Gerät" })
+			assertTrue(name, matchesName(name));
+	}
+
+	@Test
+	public void matchesName_otherNames() {
+		for (final String name : new String[] { "", "THERMOSTA", "THERMOSTATX", "TSTAT", "tstat_1", "Ä-Gerä", "Ä-Geräte" })
+			assertFalse(name, matchesName(name));
+	}
+
+	@Test
+	public void matchesName_atOffset() {
+		final byte[] data = "xxTSTAT_1yy".getBytes(UTF_8);
+		assertTrue(mMatcher.matchesName(data, 2, 7));
+		assertFalse(mMatcher.matchesName(data, 0, 9));
+	}
+
+	@Test
+	public void matchesManufacturerId() {
+		assertTrue(mMatcher.matchesManufacturerId(0x0059));
+		assertFalse(mMatcher.matchesManufacturerId(0x0058));
+		assertFalse(mMatcher.matchesManufacturerId(0xFFFF));
+		assertFalse(mMatcher.matchesManufacturerId(-1));
+	}
+
+	@Test
+	public void scanFilterConditions() {
+		assertTrue(mMatcher.hasPrefixes());
+		assertEquals(Arrays.asList("THERMOSTAT", "Ä-Gerät"), mMatcher.getExactNames());
+		assertArrayEquals(new int[] { 0x0059 }, mMatcher.getManufacturerIds());
+
+		final DevicePatternMatcher exact = DevicePatternMatcher.compile(new String[] { "name:THERMOSTAT", "manufacturer:89" });
+		assertFalse(exact.hasPrefixes());
+		assertArrayEquals(new int[] { 0x0059 }, exact.getManufacturerIds());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void compile_missingType_throws() {
+		DevicePatternMatcher.compile(new String[] { "THERMOSTAT" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void compile_unknownType_throws() {
+		DevicePatternMatcher.compile(new String[] { "suffix:STAT" });
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void compile_companyIdOutOfRange_throws() {
+		DevicePatternMatcher.compile(new String[] { "manufacturer:0x10000" });
+	}
+
+	private boolean matchesName(final String name) {
+		final byte[] data = name.getBytes(UTF_8);
+		return mMatcher.matchesName(data, 0, data.length);
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.bluetooth.BluetoothAdapter;
+import android.support.annotation.NonNull;
+import android.support.v7.util.ListUpdateCallback;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Finds, updates and removes random devices on a {@link DeviceList}, the way scan results
+ * and the expiry task of {@link ScannerLiveData} do.
+ */
+/* package */ class DeviceListDriver {
+	/** Number of distinct addresses, small enough for devices to be found again after removal. */
+	private static final int ADDRESSES = 300;
+
+	private final BluetoothAdapter mAdapter;
+	private final DeviceList mList;
+	private final Random mRandom;
+
+	/* package */ DeviceListDriver(@NonNull final BluetoothAdapter adapter, @NonNull final DeviceList list, final long seed) {
+		mAdapter = adapter;
+		mList = list;
+		mRandom = new Random(seed);
+	}
+
+	/**
+	 * Finds, updates or removes devices, picked at random.
+	 */
+	/* package */ void step() {
+		final int operation = mRandom.nextInt(8);
+		if (operation < 3 || mList.size() == 0) {
+			final long key = mRandom.nextInt(ADDRESSES);
+			if (mList.indexOf(key) == -1)
+				add(key);
+		} else if (operation < 7) {
+			update();
+		} else {
+			remove();
+		}
+	}
+
+	/**
+	 * Finds a device that is not on the list yet.
+	 */
+	/* package */ void addNew() {
+		long key = mRandom.nextInt(ADDRESSES);
+		while (mList.indexOf(key) != -1)
+			key++;
+		add(key);
+	}
+
+	private void add(final long key) {
+		final ExtendedBluetoothDevice device = new ExtendedBluetoothDevice(
+				mAdapter.getRemoteDevice(MacAddress.toString(key)), randomName(), randomRssi(), 0);
+		device.setLastSeen(mRandom.nextInt(100000));
+		mList.add(key, device);
+	}
+
+	private void update() {
+		final int index = mRandom.nextInt(mList.size());
+		final ExtendedBluetoothDevice device = mList.get(index);
+		device.setLastSeen(mRandom.nextInt(100000));
+		final boolean levelChanged = device.addRssi(randomRssi());
+		final boolean nameChanged = mRandom.nextInt(5) == 0;
+		if (nameChanged)
+			device.setName(randomName());
+		mList.changed(index, levelChanged, nameChanged);
+	}
+
+	private void remove() {
+		// A batch of distinct indexes, sorted ascending
+		final int[] indexes = new int[1 + mRandom.nextInt(3)];
+		int count = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			final int index = mRandom.nextInt(mList.size());
+			if (Arrays.binarySearch(indexes, 0, count, index) < 0) {
+				indexes[count++] = index;
+				Arrays.sort(indexes, 0, count);
+			}
+		}
+		mList.removeAll(indexes, count);
+	}
+
+	private String randomName() {
+		return mRandom.nextBoolean() ? null : "THERMOSTAT-" + mRandom.nextInt(20);
+	}
+
+	private int randomRssi() {
+		return -40 - mRandom.nextInt(60);
+	}
+
+	/**
+	 * Applies the changes to a copy of the list, as an adapter would, and checks that the copy
+	 * equals the snapshot. Inserted devices are taken from the snapshot.
+	 *
+	 * @param snapshot the snapshot just taken
+	 * @param copy     the copy held by the observer, updated to the previous snapshot
+	 */
+	/* package */ static void replay(@NonNull final DeviceSnapshot snapshot,
+									 @NonNull final List<ExtendedBluetoothDevice> copy) {
+		final DeviceChanges changes = snapshot.getChanges();
+		if (changes.isReset()) {
+			copy.clear();
+			copy.addAll(snapshot);
+			return;
+		}
+		changes.dispatchUpdatesTo(new ListUpdateCallback() {
+			@Override
+			public void onInserted(final int position, final int count) {
+				// The position is valid when the operation is replayed, not in the snapshot
+				for (int i = 0; i < count; i++)
+					copy.add(position + i, null);
+			}
+
+			@Override
+			public void onRemoved(final int position, final int count) {
+				for (int i = 0; i < count; i++)
+					copy.remove(position);
+			}
+
+			@Override
+			public void onMoved(final int fromPosition, final int toPosition) {
+				copy.add(toPosition, copy.remove(fromPosition));
+			}
+
+			@Override
+			public void onChanged(final int position, final int count, final Object payload) {
+				assertTrue("Change out of range", position >= 0 && position + count <= copy.size());
+			}
+		});
+		assertEquals(snapshot.size(), copy.size());
+		for (int i = 0; i < copy.size(); i++) {
+			if (copy.get(i) == null)
+				copy.set(i, snapshot.get(i));
+			else
+				assertSame("Device at " + i, snapshot.get(i), copy.get(i));
+		}
+	}
+}
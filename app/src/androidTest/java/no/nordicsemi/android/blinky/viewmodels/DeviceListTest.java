@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.bluetooth.BluetoothAdapter;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Checks the snapshots exchanged between the writer and the observer of a {@link DeviceList}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DeviceListTest {
+	private static final int RUNS = 10;
+	private static final int STEPS = 20000;
+
+	private BluetoothAdapter mAdapter;
+
+	@Before
+	public void setUp() {
+		mAdapter = BluetoothAdapter.getDefaultAdapter();
+		// Devices can't be created without Bluetooth
+		assumeNotNull(mAdapter);
+	}
+
+	@Test
+	public void publish_withoutChanges_doesNothing() {
+		final DeviceList list = new DeviceList();
+		final DeviceSnapshot initial = list.takeSnapshot();
+		assertEquals(-1, list.publish());
+		assertSame(initial, list.takeSnapshot());
+	}
+
+	@Test
+	public void takeSnapshot_releasesPreviousSnapshotForReuse() {
+		final DeviceList list = new DeviceList();
+		final DeviceListDriver driver = new DeviceListDriver(mAdapter, list, 0);
+		final DeviceSnapshot initial = list.takeSnapshot();
+
+		driver.addNew();
+		assertEquals(1, list.publish());
+		final DeviceSnapshot first = list.takeSnapshot();
+		assertNotSame(initial, first);
+
+		driver.addNew();
+		assertEquals(2, list.publish());
+		// The initial snapshot was released when the first one was taken
+		assertSame(initial, list.takeSnapshot());
+
+		driver.addNew();
+		assertEquals(3, list.publish());
+		assertSame(first, list.takeSnapshot());
+		assertEquals(3, first.size());
+	}
+
+	@Test
+	public void changes_notTaken_areMergedIntoNextSnapshot() {
+		final DeviceList list = new DeviceList();
+		final DeviceListDriver driver = new DeviceListDriver(mAdapter, list, 0);
+		final List<ExtendedBluetoothDevice> copy = new ArrayList<>();
+
+		// Both publishes happen before the observer takes a snapshot
+		for (int i = 0; i < 2; i++) {
+			driver.addNew();
+			list.publish();
+		}
+		final DeviceSnapshot snapshot = list.takeSnapshot();
+		assertEquals(2, snapshot.getVersion());
+		assertEquals(2, snapshot.size());
+		DeviceListDriver.replay(snapshot, copy);
+		assertEquals(snapshot, copy);
+	}
+
+	@Test
+	public void concurrentWriter_observerReplaysEverySnapshot() throws InterruptedException {
+		for (final SortOrder order : SortOrder.values()) {
+			for (int run = 0; run < RUNS; run++)
+				runConcurrently(order, run);
+		}
+	}
+
+	private void runConcurrently(final SortOrder order, final long seed) throws InterruptedException {
+		final DeviceList list = new DeviceList();
+		list.setSortOrder(order);
+		final AtomicBoolean done = new AtomicBoolean();
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final Thread thread = new Thread(() -> {
+			try {
+				final DeviceListDriver driver = new DeviceListDriver(mAdapter, list, seed);
+				final Random random = new Random(seed);
+				for (int step = 0; step < STEPS; step++) {
+					driver.step();
+					if (random.nextInt(3) == 0)
+						list.publish();
+				}
+				list.publish();
+			} catch (final Throwable t) {
+				failure.set(t);
+			} finally {
+				done.set(true);
+			}
+		});
+		thread.start();
+
+		final List<ExtendedBluetoothDevice> copy = new ArrayList<>();
+		DeviceSnapshot held = null;
+		List<Object> heldContent = null;
+		int version = 0;
+		while (true) {
+			final boolean finished = done.get();
+			// The writer must not touch the snapshot held by the observer
+			if (held != null)
+				assertEquals(order + " held snapshot modified", heldContent, contentOf(held));
+
+			final DeviceSnapshot snapshot = list.takeSnapshot();
+			if (snapshot.getVersion() != version) {
+				assertTrue(order + " version", snapshot.getVersion() > version);
+				version = snapshot.getVersion();
+				DeviceListDriver.replay(snapshot, copy);
+				held = snapshot;
+				heldContent = contentOf(snapshot);
+			}
+			// The writer had finished before this snapshot was taken, it is the last one
+			if (finished)
+				break;
+			Thread.yield();
+		}
+		thread.join();
+		assertNull(failure.get());
+		assertEquals(list.size(), copy.size());
+	}
+
+	private static List<Object> contentOf(final DeviceSnapshot snapshot) {
+		final List<Object> content = new ArrayList<>();
+		for (int i = 0; i < snapshot.size(); i++) {
+			content.add(snapshot.get(i));
+			content.add(snapshot.getName(i));
+			content.add(snapshot.getSignalLevel(i));
+		}
+		return content;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.bluetooth.BluetoothAdapter;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assume.assumeNotNull;
+
+@RunWith(AndroidJUnit4.class)
+public class DeviceRegistryTest {
+	/** More than the initial capacity, so the table is grown and shrunk. */
+	private static final int DEVICES = 500;
+	/** Addresses of one vendor, differing only in the lower bytes. */
+	private static final long VENDOR = 0xC0FFEE000000L;
+
+	private BluetoothAdapter mAdapter;
+
+	@Before
+	public void setUp() {
+		mAdapter = BluetoothAdapter.getDefaultAdapter();
+		// Devices can't be created without Bluetooth
+		assumeNotNull(mAdapter);
+	}
+
+	@Test
+	public void add_returnsIndexesInOrder() {
+		final DeviceRegistry registry = new DeviceRegistry();
+		final List<ExtendedBluetoothDevice> devices = fill(registry);
+		assertEquals(DEVICES, registry.size());
+		for (int i = 0; i < DEVICES; i++) {
+			assertSame(devices.get(i), registry.get(i));
+			assertEquals(i, registry.indexOf(devices.get(i).getAddressKey()));
+		}
+	}
+
+	@Test
+	public void indexOf_unknownAddress_returnsMinusOne() {
+		final DeviceRegistry registry = new DeviceRegistry();
+		assertEquals(-1, registry.indexOf(VENDOR));
+		fill(registry);
+		assertEquals(-1, registry.indexOf(VENDOR + DEVICES));
+		assertEquals(-1, registry.indexOf(0));
+	}
+
+	@Test
+	public void removeAll_keepsOrderAndIndex() {
+		final DeviceRegistry registry = new DeviceRegistry();
+		final List<ExtendedBluetoothDevice> devices = fill(registry);
+
+		// Remove every third device
+		final int[] indexes = new int[DEVICES];
+		int count = 0;
+		for (int i = 0; i < DEVICES; i += 3)
+			indexes[count++] = i;
+		registry.removeAll(indexes, count);
+		final List<ExtendedBluetoothDevice> remaining = new ArrayList<>();
+		for (int i = 0; i < DEVICES; i++) {
+			if (i % 3 == 0)
+				assertEquals(-1, registry.indexOf(devices.get(i).getAddressKey()));
+			else
+				remaining.add(devices.get(i));
+		}
+		assertRegistry(remaining, registry);
+
+		// Remove all but two, which shrinks the table
+		count = 0;
+		for (int i = 1; i < remaining.size() - 1; i++)
+			indexes[count++] = i;
+		registry.removeAll(indexes, count);
+		remaining.subList(1, remaining.size() - 1).clear();
+		assertRegistry(remaining, registry);
+	}
+
+	@Test
+	public void clear_removesAllDevices() {
+		final DeviceRegistry registry = new DeviceRegistry();
+		final List<ExtendedBluetoothDevice> devices = fill(registry);
+		registry.clear();
+		assertEquals(0, registry.size());
+		assertEquals(-1, registry.indexOf(devices.get(0).getAddressKey()));
+
+		// The registry can be used again
+		final ExtendedBluetoothDevice device = devices.get(DEVICES - 1);
+		assertEquals(0, registry.add(device.getAddressKey(), device));
+		assertEquals(0, registry.indexOf(device.getAddressKey()));
+	}
+
+	private List<ExtendedBluetoothDevice> fill(final DeviceRegistry registry) {
+		final List<ExtendedBluetoothDevice> devices = new ArrayList<>();
+		for (int i = 0; i < DEVICES; i++) {
+			final long key = VENDOR + i;
+			final ExtendedBluetoothDevice device = new ExtendedBluetoothDevice(
+					mAdapter.getRemoteDevice(MacAddress.toString(key)), null, -60, 0);
+			assertEquals(i, registry.add(key, device));
+			devices.add(device);
+		}
+		return devices;
+	}
+
+	private static void assertRegistry(final List<ExtendedBluetoothDevice> expected, final DeviceRegistry registry) {
+		assertEquals(expected.size(), registry.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i), registry.get(i));
+			assertEquals(i, registry.indexOf(expected.get(i).getAddressKey()));
+		}
+	}
+}
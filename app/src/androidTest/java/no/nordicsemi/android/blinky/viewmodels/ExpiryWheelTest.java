@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ExpiryWheelTest {
+	private static final long TICK = 1000;
+	private static final int SLOTS = 16;
+
+	@Test
+	public void advance_expiresDevicesPastDeadline() {
+		final ExpiryWheel wheel = new ExpiryWheel(TICK, SLOTS);
+		final Map<Long, Long> deadlines = new HashMap<>();
+		deadlines.put(1L, 5000L);
+		deadlines.put(2L, 9000L);
+		for (final Map.Entry<Long, Long> entry : deadlines.entrySet())
+			wheel.schedule(entry.getKey(), entry.getValue());
+
+		assertEquals(0, wheel.advance(4999, deadlines::get));
+		assertEquals(1, wheel.advance(5000, deadlines::get));
+		assertEquals(1L, wheel.getExpired(0));
+		assertFalse(wheel.isEmpty());
+		assertEquals(1, wheel.advance(9500, deadlines::get));
+		assertEquals(2L, wheel.getExpired(0));
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void advance_reschedulesDevicesSeenAgain() {
+		final ExpiryWheel wheel = new ExpiryWheel(TICK, SLOTS);
+		final Map<Long, Long> deadlines = new HashMap<>();
+		deadlines.put(1L, 5000L);
+		wheel.schedule(1L, 5000L);
+
+		// Seen again, beyond the range of the wheel
+		deadlines.put(1L, 5000L + 3 * SLOTS * TICK);
+		assertEquals(0, wheel.advance(5000, deadlines::get));
+		assertEquals(0, wheel.advance(5000 + 2 * SLOTS * TICK, deadlines::get));
+		assertFalse(wheel.isEmpty());
+		assertEquals(1, wheel.advance(5000 + 3 * SLOTS * TICK, deadlines::get));
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void advance_dropsDevicesNoLongerTracked() {
+		final ExpiryWheel wheel = new ExpiryWheel(TICK, SLOTS);
+		wheel.schedule(1L, 5000L);
+		assertEquals(0, wheel.advance(5000, key -> ExpiryWheel.NONE));
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void advance_randomDeadlines_neitherEarlyNorLate() {
+		final Random random = new Random(2);
+		final ExpiryWheel wheel = new ExpiryWheel(TICK, SLOTS);
+		final Map<Long, Long> deadlines = new HashMap<>();
+		long now = 100000;
+		for (long key = 0; key < 500; key++) {
+			final long deadline = now + random.nextInt(60000);
+			deadlines.put(key, deadline);
+			wheel.schedule(key, deadline);
+		}
+
+		int expired = 0;
+		for (int step = 0; step < 200; step++) {
+			now += random.nextInt(2500);
+			// Some devices are seen again, which only moves their deadline
+			for (int i = 0; i < 20; i++) {
+				final long key = random.nextInt(500);
+				final Long deadline = deadlines.get(key);
+				if (deadline != null)
+					deadlines.put(key, Math.max(deadline, now + random.nextInt(30000)));
+			}
+
+			final int count = wheel.advance(now, key -> {
+				final Long deadline = deadlines.get(key);
+				return deadline != null ? deadline : ExpiryWheel.NONE;
+			});
+			for (int i = 0; i < count; i++) {
+				final long key = wheel.getExpired(i);
+				assertTrue("Expired early: " + key, deadlines.remove(key) <= now);
+			}
+			expired += count;
+			// Devices are checked once per tick, none may be left more than a tick after its deadline
+			for (final Map.Entry<Long, Long> entry : deadlines.entrySet())
+				assertTrue("Expired late: " + entry.getKey(), entry.getValue() > now - TICK);
+		}
+		assertTrue(expired > 0);
+		assertEquals(deadlines.isEmpty(), wheel.isEmpty());
+	}
+}
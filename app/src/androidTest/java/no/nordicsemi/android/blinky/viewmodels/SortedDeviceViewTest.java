@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.bluetooth.BluetoothAdapter;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+
+/**
+ * Checks the sorted view through the {@link DeviceList} using it: the published list must be
+ * sorted after every change and the recorded changes must lead from one snapshot to the next.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SortedDeviceViewTest {
+	private static final int RUNS = 20;
+	private static final int STEPS = 300;
+
+	private BluetoothAdapter mAdapter;
+
+	@Before
+	public void setUp() {
+		mAdapter = BluetoothAdapter.getDefaultAdapter();
+		// Devices can't be created without Bluetooth
+		assumeNotNull(mAdapter);
+	}
+
+	@Test
+	public void changes_keepListSorted() {
+		for (final SortOrder order : SortOrder.values()) {
+			for (int run = 0; run < RUNS; run++) {
+				final DeviceList list = new DeviceList();
+				list.setSortOrder(order);
+				final DeviceListDriver driver = new DeviceListDriver(mAdapter, list, run);
+				final List<ExtendedBluetoothDevice> copy = new ArrayList<>();
+				for (int step = 0; step < STEPS; step++) {
+					driver.step();
+					// Nothing is published if the step has not changed the list
+					if (list.publish() == -1)
+						continue;
+					final DeviceSnapshot snapshot = list.takeSnapshot();
+					DeviceListDriver.replay(snapshot, copy);
+					assertSorted(order, list, snapshot);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void setSortOrder_sortsExistingDevices() {
+		final DeviceList list = new DeviceList();
+		final DeviceListDriver driver = new DeviceListDriver(mAdapter, list, 0);
+		for (int step = 0; step < STEPS; step++)
+			driver.step();
+		for (final SortOrder order : SortOrder.values()) {
+			list.setSortOrder(order);
+			list.publish();
+			final DeviceSnapshot snapshot = list.takeSnapshot();
+			assertTrue(snapshot.getChanges().isReset());
+			assertSorted(order, list, snapshot);
+		}
+	}
+
+	private static void assertSorted(final SortOrder order, final DeviceList list, final DeviceSnapshot snapshot) {
+		assertEquals(list.size(), snapshot.size());
+		final Comparator<ExtendedBluetoothDevice> comparator = order.getComparator();
+		for (int i = 0; i < snapshot.size(); i++) {
+			final ExtendedBluetoothDevice device = snapshot.get(i);
+			final int index = list.indexOf(device.getAddressKey());
+			assertSame(order + " device " + device.getAddress(), device, list.get(index));
+			if (comparator == null)
+				assertEquals(order + " device at " + i, i, index);
+			else if (i > 0)
+				assertTrue(order + " order at " + i, comparator.compare(snapshot.get(i - 1), device) < 0);
+		}
+	}
+}
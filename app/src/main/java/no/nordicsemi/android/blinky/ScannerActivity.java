@@ -45,22 +45,37 @@ import android.support.v7.widget.DividerItemDecoration;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.Toolbar;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.SubMenu;
 import android.view.View;
 import android.widget.Button;
 
+import java.util.List;
+
 import butterknife.BindView;
 import butterknife.ButterKnife;
 import butterknife.OnClick;
 import no.nordicsemi.android.blinky.adapter.DevicesAdapter;
 import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+import no.nordicsemi.android.blinky.profile.KnownDevices;
 import no.nordicsemi.android.blinky.utils.Utils;
-import no.nordicsemi.android.blinky.viewmodels.ScannerLiveData;
+import no.nordicsemi.android.blinky.viewmodels.ScannerState;
 import no.nordicsemi.android.blinky.viewmodels.ScannerViewModel;
+import no.nordicsemi.android.blinky.viewmodels.SortOrder;
 
 public class ScannerActivity extends AppCompatActivity implements DevicesAdapter.OnItemClickListener {
 	private static final int REQUEST_ACCESS_COARSE_LOCATION = 1022; // random number
+	private static final int MENU_GROUP_SORT = 1;
+	private static final int MENU_GROUP_KNOWN_DEVICES = 2;
+	private static final int MENU_ID_SORT = 100;
+	private static final int MENU_ID_KNOWN_DEVICES = 1000;
+	private static final int[] SORT_ORDER_NAMES = {
+			R.string.sort_discovery, R.string.sort_signal, R.string.sort_name, R.string.sort_last_seen
+	};
 
 	private ScannerViewModel mScannerViewModel;
+	private List<KnownDevices.KnownDevice> mKnownDevices;
 
 	@BindView(R.id.state_scanning) View mScanningView;
 	@BindView(R.id.no_devices)View mEmptyView;
@@ -89,11 +104,69 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
 		recyclerView.setLayoutManager(new LinearLayoutManager(this));
 		final DividerItemDecoration dividerItemDecoration = new DividerItemDecoration(recyclerView.getContext(), DividerItemDecoration.VERTICAL);
 		recyclerView.addItemDecoration(dividerItemDecoration);
-		final DevicesAdapter adapter = new DevicesAdapter(this, mScannerViewModel.getScannerState());
+		final DevicesAdapter adapter = new DevicesAdapter(this, mScannerViewModel.getDevices());
 		adapter.setOnItemClickListener(this);
 		recyclerView.setAdapter(adapter);
 	}
 
+	@Override
+	protected void onStart() {
+		super.onStart();
+		// The permission or Location may have been changed in Settings
+		mScannerViewModel.refresh();
+		// The scan was stopped in onStop(), but the state may be the same as before
+		final ScannerState state = mScannerViewModel.getScannerState().getValue();
+		if (state != null)
+			startScan(state);
+		// A new device may have been connected since the menu was created
+		invalidateOptionsMenu();
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(final Menu menu) {
+		final SubMenu sortOrder = menu.addSubMenu(Menu.NONE, MENU_ID_SORT - 1, Menu.NONE, R.string.menu_sort_by);
+		final SortOrder current = mScannerViewModel.getSortOrder();
+		for (final SortOrder order : SortOrder.values()) {
+			sortOrder.add(MENU_GROUP_SORT, MENU_ID_SORT + order.ordinal(), Menu.NONE, SORT_ORDER_NAMES[order.ordinal()])
+					.setChecked(order == current);
+		}
+		sortOrder.setGroupCheckable(MENU_GROUP_SORT, true, true);
+
+		mKnownDevices = KnownDevices.getInstance(this).getAll();
+		if (mKnownDevices.isEmpty())
+			return true;
+
+		final SubMenu knownDevices = menu.addSubMenu(Menu.NONE, MENU_ID_KNOWN_DEVICES - 1, Menu.NONE, R.string.menu_known_devices);
+		for (int i = 0; i < mKnownDevices.size(); i++) {
+			final KnownDevices.KnownDevice device = mKnownDevices.get(i);
+			knownDevices.add(MENU_GROUP_KNOWN_DEVICES, MENU_ID_KNOWN_DEVICES + i, Menu.NONE, device.name != null ? device.name + " (" + device.address + ")" : device.address);
+		}
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(final MenuItem item) {
+		if (item.getGroupId() == MENU_GROUP_SORT) {
+			mScannerViewModel.setSortOrder(SortOrder.values()[item.getItemId() - MENU_ID_SORT]);
+			item.setChecked(true);
+			return true;
+		}
+
+		final int index = item.getItemId() - MENU_ID_KNOWN_DEVICES;
+		if (item.getGroupId() == MENU_GROUP_KNOWN_DEVICES && mKnownDevices != null && index >= 0 && index < mKnownDevices.size()) {
+			// The scanner would compete with the connection attempt for the radio
+			stopScan();
+
+			final KnownDevices.KnownDevice device = mKnownDevices.get(index);
+			final Intent controlBlinkIntent = new Intent(this, ThermostatActivity.class);
+			controlBlinkIntent.putExtra(ThermostatActivity.EXTRA_DEVICE_ADDRESS, device.address);
+			controlBlinkIntent.putExtra(ThermostatActivity.EXTRA_DEVICE_NAME, device.name);
+			startActivity(controlBlinkIntent);
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
 	@Override
 	protected void onStop() {
 		super.onStop();
@@ -102,8 +175,10 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
 
 	@Override
 	public void onItemClick(final ExtendedBluetoothDevice device) {
+		// The device itself is shared through DeviceRepository
 		final Intent controlBlinkIntent = new Intent(this, ThermostatActivity.class);
-		controlBlinkIntent.putExtra(ThermostatActivity.EXTRA_DEVICE, device);
+		controlBlinkIntent.putExtra(ThermostatActivity.EXTRA_DEVICE_ADDRESS, device.getAddress());
+		controlBlinkIntent.putExtra(ThermostatActivity.EXTRA_DEVICE_NAME, device.getName());
 		startActivity(controlBlinkIntent);
 	}
 
@@ -144,10 +219,11 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
 
 	/**
 	 * Start scanning for Bluetooth devices or displays a message based on the scanner state.
+	 * Called when the state changes and when the activity is started, not for every device found.
 	 */
-	private void startScan(final ScannerLiveData state) {
+	private void startScan(final ScannerState state) {
 		// First, check the Location permission. This is required on Marshmallow onwards in order to scan for Bluetooth LE devices.
-		if (Utils.isLocationPermissionsGranted(this)) {
+		if (state.isLocationPermissionGranted()) {
 			mNoLocationPermissionView.setVisibility(View.GONE);
 
 			// Bluetooth must be enabled
@@ -161,7 +237,7 @@ public class ScannerActivity extends AppCompatActivity implements DevicesAdapter
 				if (state.isEmpty()) {
 					mEmptyView.setVisibility(View.VISIBLE);
 
-					if (!Utils.isLocationRequired(this) || Utils.isLocationEnabled(this)) {
+					if (!state.isLocationRequired() || state.isLocationEnabled()) {
 						mNoLocationView.setVisibility(View.INVISIBLE);
 					} else {
 						mNoLocationView.setVisibility(View.VISIBLE);
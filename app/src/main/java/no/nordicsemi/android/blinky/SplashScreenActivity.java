@@ -33,29 +33,37 @@ package no.nordicsemi.android.blinky;
 import android.app.Activity;
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Handler;
-import android.view.View;
-import android.view.animation.AlphaAnimation;
-import android.view.animation.Animation;
+import android.view.Choreographer;
+
+import no.nordicsemi.android.blinky.viewmodels.SeenDevicesCache;
 
 public class SplashScreenActivity extends Activity {
-	private static final int DURATION = 1000;
 
 	@Override
 	protected void onCreate(final Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		setContentView(R.layout.activity_splash_screen);
 
-		new Handler().postDelayed(() -> {
-			final Intent intent = new Intent(SplashScreenActivity.this, ScannerActivity.class);
-			intent.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION);
-			startActivity(intent);
-			finish();
-		}, DURATION);
+		// Read the recently seen devices while the splash screen is being drawn,
+		// so the scanner can show them immediately
+		SeenDevicesCache.getInstance(this).preload();
+
+		// Leave as soon as the splash screen has been drawn, instead of after a fixed delay
+		Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+				getWindow().getDecorView().post(this::openScanner));
 	}
 
 	@Override
 	public void onBackPressed() {
 		// We don't want the splash screen to be interrupted
 	}
+
+	private void openScanner() {
+		if (isFinishing())
+			return;
+		final Intent intent = new Intent(this, ScannerActivity.class);
+		intent.addFlags(Intent.FLAG_ACTIVITY_NO_ANIMATION);
+		startActivity(intent);
+		finish();
+	}
 }
@@ -32,6 +32,8 @@ package no.nordicsemi.android.blinky;
 
 import android.arch.lifecycle.Observer;
 import android.arch.lifecycle.ViewModelProviders;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
@@ -43,14 +45,26 @@ import android.widget.Button;
 import android.widget.LinearLayout;
 import android.widget.Switch;
 import android.widget.TextView;
+import android.widget.Toast;
 import android.widget.ToggleButton;
 
 import butterknife.OnClick;
 import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+import no.nordicsemi.android.blinky.profile.ThermostatFleet;
 import no.nordicsemi.android.blinky.viewmodels.BlinkyViewModel;
+import no.nordicsemi.android.blinky.viewmodels.DeviceRepository;
 
 public class ThermostatActivity extends AppCompatActivity {
-	public static final String EXTRA_DEVICE = "no.nordicsemi.android.blinky.EXTRA_DEVICE";
+	/**
+	 * Address of the device to connect to. The device is looked up in {@link DeviceRepository}.
+	 * If it's not there, e.g. for a known device or after the process was restarted,
+	 * it is connected to directly, without scanning.
+	 */
+	public static final String EXTRA_DEVICE_ADDRESS = "no.nordicsemi.android.blinky.EXTRA_DEVICE_ADDRESS";
+	/** The last known name of the device given in {@link #EXTRA_DEVICE_ADDRESS}. */
+	public static final String EXTRA_DEVICE_NAME = "no.nordicsemi.android.blinky.EXTRA_DEVICE_NAME";
+
+	private BlinkyViewModel mViewModel;
 
 	@Override
 	protected void onCreate(final Bundle savedInstanceState) {
@@ -58,9 +72,24 @@ public class ThermostatActivity extends AppCompatActivity {
 		setContentView(R.layout.activity_blinky);
 
 		final Intent intent = getIntent();
-		final ExtendedBluetoothDevice device = intent.getParcelableExtra(EXTRA_DEVICE);
-		final String deviceName = device.getName();
-		final String deviceAddress = device.getAddress();
+		final String deviceAddress = intent.getStringExtra(EXTRA_DEVICE_ADDRESS);
+		final ExtendedBluetoothDevice device = DeviceRepository.getInstance().get(deviceAddress);
+		final String deviceName = device != null ? device.getName() : intent.getStringExtra(EXTRA_DEVICE_NAME);
+
+		// A direct connection to a known device needs the adapter and a valid address
+		BluetoothDevice remoteDevice = null;
+		if (device == null) {
+			final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+			if (adapter == null) {
+				finishWithError(getString(R.string.error_bluetooth_not_supported));
+				return;
+			}
+			if (deviceAddress == null || !BluetoothAdapter.checkBluetoothAddress(deviceAddress)) {
+				finishWithError(getString(R.string.error_invalid_address, deviceAddress));
+				return;
+			}
+			remoteDevice = adapter.getRemoteDevice(deviceAddress);
+		}
 
 		// Setting toolbar view
 		final Toolbar toolbar = findViewById(R.id.toolbar);
@@ -70,8 +99,18 @@ public class ThermostatActivity extends AppCompatActivity {
 		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
 		// Configure the view model
-		final BlinkyViewModel viewModel = ViewModelProviders.of(this).get(BlinkyViewModel.class);
-		viewModel.connect(device);
+		final BlinkyViewModel viewModel = mViewModel = ViewModelProviders.of(this).get(BlinkyViewModel.class);
+		final boolean connected;
+		if (device != null) {
+			connected = viewModel.connect(device);
+		} else {
+			// Connect directly to a known device, without scanning
+			connected = viewModel.connect(remoteDevice, deviceName, true);
+		}
+		if (!connected) {
+			finishWithError(getString(R.string.error_too_many_connections, ThermostatFleet.MAX_CONNECTIONS));
+			return;
+		}
 
 		// Set up views
 		final LinearLayout progressContainer = findViewById(R.id.progress_container);
@@ -109,6 +148,11 @@ public class ThermostatActivity extends AppCompatActivity {
 		});
 		// Create observer on connection state @mConnectionState (can not get the point)
 		viewModel.getConnectionState().observe(this, connectionState::setText);
+		// Errors are shown as a toast, so that they stay visible after the screen is finished
+		viewModel.getError().observe(this, error -> {
+			if (error != null)
+				Toast.makeText(this, error, Toast.LENGTH_LONG).show();
+		});
 		// Create observer on connection if disconnect finish this UI, @mIsConnected
 		viewModel.isConnected().observe(this, connected -> {
 			if (!connected) {
@@ -141,6 +185,18 @@ public class ThermostatActivity extends AppCompatActivity {
 		/*************************** END of add observer to Livedata *********************/
 	}
 
+	@Override
+	protected void onResume() {
+		super.onResume();
+		mViewModel.setForeground(true);
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		mViewModel.setForeground(false);
+	}
+
 	@Override
 	public boolean onOptionsItemSelected(final MenuItem item) {
 		switch (item.getItemId()) {
@@ -150,4 +206,13 @@ public class ThermostatActivity extends AppCompatActivity {
 		}
 		return false;
 	}
+
+	/**
+	 * Shows the error and closes the screen. When called from {@link #onCreate(Bundle)}, onStart,
+	 * onResume and onPause are not called, but onDestroy still is.
+	 */
+	private void finishWithError(final String message) {
+		Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+		finish();
+	}
 }
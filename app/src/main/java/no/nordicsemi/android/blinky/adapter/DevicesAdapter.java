@@ -31,6 +31,7 @@
 package no.nordicsemi.android.blinky.adapter;
 
 import android.content.Context;
+import android.support.v7.util.ListUpdateCallback;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
@@ -45,11 +46,16 @@ import butterknife.BindView;
 import butterknife.ButterKnife;
 import no.nordicsemi.android.blinky.ScannerActivity;
 import no.nordicsemi.android.blinky.R;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.blinky.viewmodels.DeviceChanges;
+import no.nordicsemi.android.blinky.viewmodels.DeviceSnapshot;
 import no.nordicsemi.android.blinky.viewmodels.ScannerLiveData;
 
 public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHolder> {
 	private final ScannerActivity mContext;
-	private final List<ExtendedBluetoothDevice> mDevices;
+	/** The devices being displayed. The list changes only when a new snapshot is taken. */
+	private DeviceSnapshot mDevices;
+	private final String mUnknownDeviceName;
 	private OnItemClickListener mOnItemClickListener;
 
 	@FunctionalInterface
@@ -63,13 +69,22 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 
 	public DevicesAdapter(final ScannerActivity activity, final ScannerLiveData scannerLiveData) {
 		mContext = activity;
-		mDevices = scannerLiveData.getDevices();
+		// Changes leading to the first snapshot are already included in it
+		mDevices = scannerLiveData.takeSnapshot();
+		mUnknownDeviceName = activity.getString(R.string.unknown_device);
+		setHasStableIds(true);
 		scannerLiveData.observe(activity, devices -> {
-			final Integer i = devices.getUpdatedDeviceIndex();
-			if (i != null)
-				notifyItemChanged(i);
-			else
+			final DeviceSnapshot snapshot = devices.takeSnapshot();
+			if (snapshot.getVersion() == mDevices.getVersion())
+				return;
+
+			// Switch to the new list before notifying, so that the positions match
+			mDevices = snapshot;
+			final DeviceChanges changes = snapshot.getChanges();
+			if (changes.isReset())
 				notifyDataSetChanged();
+			else
+				changes.dispatchUpdatesTo(mListUpdateCallback);
 		});
 	}
 
@@ -81,21 +96,32 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 
 	@Override
 	public void onBindViewHolder(final ViewHolder holder, final int position) {
-		final ExtendedBluetoothDevice device = mDevices.get(position);
-		final String deviceName = device.getName();
-
-		if (!TextUtils.isEmpty(deviceName))
-			holder.deviceName.setText(deviceName);
-		else
-			holder.deviceName.setText(R.string.unknown_device);
-		holder.deviceAddress.setText(device.getAddress());
-		final int rssiPercent = (int) (100.0f * (127.0f + device.getRssi()) / (127.0f + 20.0f));
-		holder.rssi.setImageLevel(rssiPercent);
+		holder.bindAddress(mDevices.get(position));
+		holder.bindName(mDevices.getName(position));
+		holder.bindSignal(mDevices.getSignalLevel(position));
+	}
+
+	@Override
+	public void onBindViewHolder(final ViewHolder holder, final int position, final List<Object> payloads) {
+		if (payloads.isEmpty()) {
+			onBindViewHolder(holder, position);
+			return;
+		}
+
+		for (final Object payload : payloads) {
+			if (payload == DeviceChanges.Payload.SIGNAL)
+				holder.bindSignal(mDevices.getSignalLevel(position));
+			else if (payload == DeviceChanges.Payload.NAME)
+				holder.bindName(mDevices.getName(position));
+			else
+				onBindViewHolder(holder, position);
+		}
 	}
 
 	@Override
 	public long getItemId(final int position) {
-		return position;
+		// The address is unique and, being 48 bits long, fits in the ID
+		return mDevices.get(position).getAddressKey();
 	}
 
 	@Override
@@ -107,20 +133,67 @@ public class DevicesAdapter extends RecyclerView.Adapter<DevicesAdapter.ViewHold
 		return getItemCount() == 0;
 	}
 
+	private final ListUpdateCallback mListUpdateCallback = new ListUpdateCallback() {
+		@Override
+		public void onInserted(final int position, final int count) {
+			notifyItemRangeInserted(position, count);
+		}
+
+		@Override
+		public void onRemoved(final int position, final int count) {
+			notifyItemRangeRemoved(position, count);
+		}
+
+		@Override
+		public void onMoved(final int fromPosition, final int toPosition) {
+			notifyItemMoved(fromPosition, toPosition);
+		}
+
+		@Override
+		public void onChanged(final int position, final int count, final Object payload) {
+			notifyItemRangeChanged(position, count, payload);
+		}
+	};
+
 	final class ViewHolder extends RecyclerView.ViewHolder {
 		@BindView(R.id.device_address) TextView deviceAddress;
 		@BindView(R.id.device_name) TextView deviceName;
 		@BindView(R.id.rssi) ImageView rssi;
 
+		/** Values currently displayed, so that the text views are not updated with the same text. */
+		private long mBoundAddress = MacAddress.INVALID;
+		private String mBoundName;
+
 		private ViewHolder(final View view) {
 			super(view);
 			ButterKnife.bind(this, view);
 
 			view.findViewById(R.id.device_container).setOnClickListener(v -> {
-				if (mOnItemClickListener != null) {
-					mOnItemClickListener.onItemClick(mDevices.get(getAdapterPosition()));
+				// The position is unknown if the row has just been removed
+				final int position = getAdapterPosition();
+				if (mOnItemClickListener != null && position != RecyclerView.NO_POSITION) {
+					mOnItemClickListener.onItemClick(mDevices.get(position));
 				}
 			});
 		}
+
+		private void bindAddress(final ExtendedBluetoothDevice device) {
+			if (device.getAddressKey() != mBoundAddress) {
+				mBoundAddress = device.getAddressKey();
+				deviceAddress.setText(device.getAddress());
+			}
+		}
+
+		private void bindName(final String newName) {
+			final String name = TextUtils.isEmpty(newName) ? mUnknownDeviceName : newName;
+			if (!name.equals(mBoundName)) {
+				mBoundName = name;
+				deviceName.setText(name);
+			}
+		}
+
+		private void bindSignal(final int signalLevel) {
+			rssi.setImageLevel(signalLevel);
+		}
 	}
 }
@@ -38,20 +38,46 @@
 package no.nordicsemi.android.blinky.adapter;
 
 import android.bluetooth.BluetoothDevice;
-import android.os.Parcel;
-import android.os.Parcelable;
+import android.os.SystemClock;
 
+import no.nordicsemi.android.blinky.utils.MacAddress;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 
-public class ExtendedBluetoothDevice implements Parcelable {
+public class ExtendedBluetoothDevice {
 	private final BluetoothDevice device;
+	private final String address;
+	private final long addressKey;
 	private String name;
-	private int rssi;
+	private final RssiFilter rssiFilter;
+	private long timestampNanos;
+	private long lastSeen;
 
 	public ExtendedBluetoothDevice(final ScanResult scanResult) {
 		this.device = scanResult.getDevice();
+		this.address = device.getAddress();
+		this.addressKey = MacAddress.toLong(address);
 		this.name = scanResult.getScanRecord().getDeviceName();
-		this.rssi = scanResult.getRssi();
+		this.rssiFilter = new RssiFilter(scanResult.getRssi());
+		this.timestampNanos = scanResult.getTimestampNanos();
+		this.lastSeen = SystemClock.elapsedRealtime();
+	}
+
+	/**
+	 * Creates a device restored from the cache of previously seen devices.
+	 *
+	 * @param device         the device, obtained using {@link android.bluetooth.BluetoothAdapter#getRemoteDevice(String)}
+	 * @param name           the last known name
+	 * @param rssi           the last known RSSI
+	 * @param timestampNanos time the device was last seen, in nanoseconds since boot
+	 */
+	public ExtendedBluetoothDevice(final BluetoothDevice device, final String name, final int rssi, final long timestampNanos) {
+		this.device = device;
+		this.address = device.getAddress();
+		this.addressKey = MacAddress.toLong(address);
+		this.name = name;
+		this.rssiFilter = new RssiFilter(rssi);
+		this.timestampNanos = timestampNanos;
+		this.lastSeen = SystemClock.elapsedRealtime();
 	}
 
 	public BluetoothDevice getDevice() {
@@ -59,7 +85,14 @@ public class ExtendedBluetoothDevice implements Parcelable {
 	}
 
 	public String getAddress() {
-		return device.getAddress();
+		return address;
+	}
+
+	/**
+	 * Returns the device address packed into a long.
+	 */
+	public long getAddressKey() {
+		return addressKey;
 	}
 
 	public String getName() {
@@ -70,56 +103,63 @@ public class ExtendedBluetoothDevice implements Parcelable {
 		this.name = name;
 	}
 
+	/**
+	 * Returns the RSSI averaged over the last few packets.
+	 */
 	public int getRssi() {
-		return rssi;
+		return rssiFilter.getRssi();
 	}
 
-	public void setRssi(final int rssi) {
-		this.rssi = rssi;
+	/**
+	 * Returns the averaged signal strength in percent, to be used as the signal icon level.
+	 */
+	public int getSignalLevel() {
+		return rssiFilter.getLevel();
 	}
 
-	public boolean matches(final ScanResult scanResult) {
-		return device.getAddress().equals(scanResult.getDevice().getAddress());
+	/**
+	 * Adds the RSSI of a received packet to the average.
+	 *
+	 * @param rssi the RSSI in dBm
+	 * @return true if the number of bars on the signal icon has changed
+	 */
+	public boolean addRssi(final int rssi) {
+		return rssiFilter.add(rssi);
 	}
 
-	@Override
-	public boolean equals(final Object o) {
-		if (o instanceof ExtendedBluetoothDevice) {
-			final ExtendedBluetoothDevice that = (ExtendedBluetoothDevice) o;
-			return device.getAddress().equals(that.device.getAddress());
-		}
-		return super.equals(o);
+	/**
+	 * Returns the timestamp of the last packet received from the device, in nanoseconds since boot.
+	 */
+	public long getTimestampNanos() {
+		return timestampNanos;
 	}
 
-	// Parcelable implementation
-
-	private ExtendedBluetoothDevice(final Parcel in) {
-		this.device = in.readParcelable(BluetoothDevice.class.getClassLoader());
-		this.name = in.readString();
-		this.rssi = in.readInt();
+	public void setTimestampNanos(final long timestampNanos) {
+		this.timestampNanos = timestampNanos;
 	}
 
-	@Override
-	public void writeToParcel(final Parcel parcel, final int flags) {
-		parcel.writeParcelable(device, flags);
-		parcel.writeString(name);
-		parcel.writeInt(rssi);
+	/**
+	 * Returns the time the device was last heard from in this session, or restored from cache,
+	 * in milliseconds in {@link SystemClock#elapsedRealtime()} time base.
+	 */
+	public long getLastSeen() {
+		return lastSeen;
 	}
 
-	@Override
-	public int describeContents() {
-		return 0;
+	public void setLastSeen(final long lastSeen) {
+		this.lastSeen = lastSeen;
 	}
 
-	public static final Creator<ExtendedBluetoothDevice> CREATOR = new Creator<ExtendedBluetoothDevice>() {
-		@Override
-		public ExtendedBluetoothDevice createFromParcel(final Parcel source) {
-			return new ExtendedBluetoothDevice(source);
-		}
+	public boolean matches(final ScanResult scanResult) {
+		return device.getAddress().equals(scanResult.getDevice().getAddress());
+	}
 
-		@Override
-		public ExtendedBluetoothDevice[] newArray(final int size) {
-			return new ExtendedBluetoothDevice[size];
+	@Override
+	public boolean equals(final Object o) {
+		if (o instanceof ExtendedBluetoothDevice) {
+			final ExtendedBluetoothDevice that = (ExtendedBluetoothDevice) o;
+			return device.getAddress().equals(that.device.getAddress());
 		}
-	};
+		return super.equals(o);
+	}
 }
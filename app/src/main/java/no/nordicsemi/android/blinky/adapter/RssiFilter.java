@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.adapter;
+
+/**
+ * Smooths RSSI values of a single device using a moving average over the last few packets.
+ * Samples are kept in a fixed primitive ring buffer together with their running sum, so adding
+ * a sample is O(1) and does not allocate.
+ * <p>
+ * The filter also maps the smoothed value to the signal level shown by the
+ * {@code ic_rssi_bar} level list, so that the UI can be updated only when the number of bars
+ * changes.
+ */
+/* package */ class RssiFilter {
+	/** Number of samples averaged, must be a power of 2. */
+	private static final int SIZE = 8;
+	private static final int MASK = SIZE - 1;
+	/** Upper bounds of the level ranges of the {@code ic_rssi_bar} level list, in percent. */
+	private static final int[] BAR_LEVELS = { 10, 28, 45 };
+	/** Margin the level has to cross a bound by to change the number of bars, in percent. */
+	private static final int HYSTERESIS = 2;
+
+	private final byte[] mSamples = new byte[SIZE];
+	private int mNext;
+	private int mCount;
+	private int mSum;
+	private int mRssi;
+	private int mLevel;
+	private int mBars;
+
+	/* package */ RssiFilter(final int rssi) {
+		add(rssi);
+		mBars = barsOf(mLevel);
+	}
+
+	/**
+	 * Adds a sample to the filter.
+	 *
+	 * @param rssi the received RSSI in dBm
+	 * @return true if the number of signal bars has changed
+	 */
+	/* package */ boolean add(final int rssi) {
+		if (mCount == SIZE)
+			mSum -= mSamples[mNext];
+		else
+			mCount++;
+		mSamples[mNext] = (byte) rssi;
+		mSum += rssi;
+		mNext = (mNext + 1) & MASK;
+
+		mRssi = mSum / mCount;
+		// RSSI from -127 to 20 dBm mapped to 0-100%
+		mLevel = Math.max(0, Math.min(100, 100 * (127 + mRssi) / 147));
+		// A value oscillating around a bound would otherwise toggle the icon on every packet
+		int bars = mBars;
+		while (bars < BAR_LEVELS.length && mLevel > BAR_LEVELS[bars] + HYSTERESIS)
+			bars++;
+		while (bars > 0 && mLevel <= BAR_LEVELS[bars - 1] - HYSTERESIS)
+			bars--;
+		final boolean changed = bars != mBars;
+		mBars = bars;
+		return changed;
+	}
+
+	/**
+	 * Returns the smoothed RSSI in dBm.
+	 */
+	/* package */ int getRssi() {
+		return mRssi;
+	}
+
+	/**
+	 * Returns the smoothed signal strength in percent, to be used as the image level.
+	 * The value is kept within the range of the current number of bars.
+	 */
+	/* package */ int getLevel() {
+		final int min = mBars > 0 ? BAR_LEVELS[mBars - 1] + 1 : 0;
+		final int max = mBars < BAR_LEVELS.length ? BAR_LEVELS[mBars] : 100;
+		return Math.max(min, Math.min(max, mLevel));
+	}
+
+	private static int barsOf(final int level) {
+		int bars = 0;
+		while (bars < BAR_LEVELS.length && level > BAR_LEVELS[bars])
+			bars++;
+		return bars;
+	}
+}
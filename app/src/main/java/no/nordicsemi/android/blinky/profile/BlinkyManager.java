@@ -22,17 +22,26 @@
 
 package no.nordicsemi.android.blinky.profile;
 
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.UUID;
 
 import no.nordicsemi.android.ble.BleManager;
+import no.nordicsemi.android.blinky.utils.Utils;
 import no.nordicsemi.android.log.LogContract;
 
 public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
@@ -41,10 +50,11 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
      * Nordic Blinky Service UUID
      */
     public final static UUID LBS_UUID_SERVICE = UUID.fromString("0000ff01-0000-1000-8000-00805f9b34fb");
-    /*
-     * Mask for UUID
+    /**
+     * Mask for {@link #LBS_UUID_SERVICE} in scan filters. Bits set to 1 must match, so all bits
+     * of the 16-bit UUID and of the Base UUID are compared.
      */
-    public final static UUID LBS_UUID_SERVICE_MASK = UUID.fromString("0000ff00-0000-0000-0000-00000000000");
+    public final static UUID LBS_UUID_SERVICE_MASK = UUID.fromString("ffffffff-ffff-ffff-ffff-ffffffffffff");
     /**
      * BUTTON characteristic UUID
      */
@@ -55,9 +65,109 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
     private final static UUID GATT_CONDITIONCHAHANDLE = UUID.fromString("0000ff02-0000-1000-8000-00805f9b34fb");
 
     private BluetoothGattCharacteristic mConditionChaHandle, mCMDCharacteristic;
+    private final ThermostatCodec mCodec;
+    /**
+     * Maximum time to wait for a command write to complete. If it fails, the next command is sent.
+     */
+    private final static long WRITE_TIMEOUT = 3000; // ms
+    /**
+     * Time to wait for a status notification confirming a command written without response.
+     */
+    private final static long CONFIRMATION_TIMEOUT = 500; // ms
+    /**
+     * Number of times an unconfirmed command is sent again before giving up.
+     */
+    private final static int MAX_RETRIES = 3;
+    /**
+     * MTU requested during initialization.
+     */
+    private final static int PREFERRED_MTU = 247;
+    /**
+     * Time without user activity after which the connection priority is lowered to balanced.
+     */
+    private final static long IDLE_TIMEOUT = 15000; // ms
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    /** The latest pending command for each actuator, guarded by itself. */
+    private final ThermostatCommand[] mPendingCommands = new ThermostatCommand[ThermostatCommand.Actuator.values().length];
+    /** Actuators with a pending command, in order of the first request. */
+    private final Deque<ThermostatCommand.Actuator> mPendingActuators = new ArrayDeque<>();
+    /** The command being written, or null. */
+    private ThermostatCommand mCommandInFlight;
+    /**
+     * Sequence numbers of the write in flight (0 if none), of the last enqueued write and of the last
+     * completed one. Writes complete in the order they were enqueued, so a completion whose number
+     * is not the one in flight belongs to an earlier write that has timed out.
+     */
+    private int mSequenceInFlight, mLastWriteSequence, mLastCompletedSequence;
+
+    /** Whether write without response should be used if the FF03 characteristic supports it. */
+    private boolean mWriteWithoutResponseEnabled = true;
+    /** Whether commands are currently written without response. */
+    private boolean mWriteWithoutResponse;
+    /** Commands written without response awaiting confirmation, one per actuator, guarded by mPendingCommands. */
+    private final ThermostatCommand[] mUnconfirmedCommands = new ThermostatCommand[ThermostatCommand.Actuator.values().length];
+    private final long[] mConfirmationDeadlines = new long[ThermostatCommand.Actuator.values().length];
+    private final int[] mRetries = new int[ThermostatCommand.Actuator.values().length];
+
+    private BluetoothGatt mGatt;
+    private boolean mAutoConnect;
+    /** Whether the control screen is visible. High priority is used only in foreground. */
+    private volatile boolean mForeground;
+    private volatile int mConnectionPriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+    private int mMtu = 23;
+    private boolean mLe2MPhyRequested;
+
+    /** The last value of the status characteristic, -1 if unknown. */
+    private int mLastStatusValue = -1;
 
     public BlinkyManager(final Context context) {
         super(context);
+        mCodec = ThermostatCodec.getInstance(context);
+    }
+
+    /**
+     * Enables or disables writing commands without response. Without response, a write takes
+     * a single connection interval and is confirmed by the following status notification instead.
+     * The mode is used only if the FF03 characteristic supports it. The change is applied
+     * on the next connection.
+     *
+     * @param enabled true to use write without response when available
+     */
+    public void setWriteWithoutResponseEnabled(final boolean enabled) {
+        mWriteWithoutResponseEnabled = enabled;
+    }
+
+    /**
+     * Returns whether commands are written without response on the current connection.
+     */
+    public boolean isWriteWithoutResponse() {
+        return mWriteWithoutResponse;
+    }
+
+    /**
+     * Sets whether the control screen is in the foreground. High connection priority is requested
+     * while it is visible and in use, balanced priority when it goes to background or idle.
+     *
+     * @param foreground true when the control screen is visible
+     */
+    public void setForeground(final boolean foreground) {
+        mForeground = foreground;
+        onUserActivity();
+    }
+
+    /**
+     * Returns the negotiated MTU.
+     */
+    public int getMtu() {
+        return mMtu;
+    }
+
+    /**
+     * Returns the last requested connection priority, one of BluetoothGatt.CONNECTION_PRIORITY_* constants.
+     */
+    public int getConnectionPriority() {
+        return mConnectionPriority;
     }
 
     @Override
@@ -65,11 +175,19 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
         return mGattCallback;
     }
 
+    /**
+     * Sets whether the next connection should use the autoConnect flag. Direct connections to known
+     * devices use it, so the connection waits until the device is in range instead of timing out.
+     */
+    public void setAutoConnect(final boolean autoConnect) {
+        mAutoConnect = autoConnect;
+    }
+
     @Override
     protected boolean shouldAutoConnect() {
         // If you want to connect to the device using autoConnect flag = true, return true here.
         // Read the documentation of this method.
-        return super.shouldAutoConnect();
+        return mAutoConnect || super.shouldAutoConnect();
     }
 
     /**
@@ -80,12 +198,30 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
         @Override
         protected Deque<Request> initGatt(final BluetoothGatt gatt) {
             final LinkedList<Request> requests = new LinkedList<>();
-            requests.push(Request.newReadRequest(mCMDCharacteristic));
+            // The status may have changed while disconnected, it is always read
             requests.push(Request.newReadRequest(mConditionChaHandle));
             requests.push(Request.newEnableNotificationsRequest(mConditionChaHandle));
+            mGatt = gatt;
+            // MTU and connection priority requests are available on Lollipop onwards
+            if (Utils.isLollipopOrAbove()) {
+                // Requests are pushed, so the tuning below is done before the requests above
+                requests.push(Request.newMtuRequest(PREFERRED_MTU));
+                mConnectionPriority = mForeground ? BluetoothGatt.CONNECTION_PRIORITY_HIGH : BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+                requests.push(Request.newConnectionPriorityRequest(mConnectionPriority));
+                if (mForeground)
+                    mHandler.postDelayed(mIdleTimeout, IDLE_TIMEOUT);
+            }
+            requestLe2MPhy(gatt);
             return requests;
         }
 
+        @Override
+        protected void onMtuChanged(final int mtu) {
+            mMtu = mtu;
+            log(LogContract.Log.Level.APPLICATION, "MTU changed to " + mtu);
+            mCallbacks.onConnectionParametersChanged(mMtu, mConnectionPriority, mLe2MPhyRequested);
+        }
+
         @Override
         public boolean isRequiredServiceSupported(final BluetoothGatt gatt) {
             final BluetoothGattService service = gatt.getService(LBS_UUID_SERVICE);
@@ -100,14 +236,26 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
 				writeRequest = (rxProperties & BluetoothGattCharacteristic.PROPERTY_WRITE) > 0;
 			}
 */
+            // Write without response needs the status notifications to confirm delivery
+            mWriteWithoutResponse = mWriteWithoutResponseEnabled && mCMDCharacteristic != null && mConditionChaHandle != null
+                    && (mCMDCharacteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+            if (mCMDCharacteristic != null)
+                mCMDCharacteristic.setWriteType(mWriteWithoutResponse ?
+                        BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
             //return mConditionChaHandle != null && mCMDCharacteristic != null && writeRequest;
             return mCMDCharacteristic != null;
         }
 
         @Override
         protected void onDeviceDisconnected() {
+            mLastStatusValue = -1;
             mConditionChaHandle = null;
             mCMDCharacteristic = null;
+            mGatt = null;
+            mMtu = 23;
+            mLe2MPhyRequested = false;
+            mHandler.removeCallbacks(mIdleTimeout);
+            clearPendingCommands();
         }
 
         @Override
@@ -121,6 +269,7 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
             else if(characteristic == mConditionChaHandle){
                 log(LogContract.Log.Level.APPLICATION, "mConditionChaHandle has ben read");
                 Log.v(TAG,"mConditionChaHandle:"+data);
+                mLastStatusValue = data;
             }
             Log.v(TAG,"Callback of Read");
         }
@@ -134,7 +283,13 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
                 final boolean ledOn = (data == 0x01);
                 log(LogContract.Log.Level.APPLICATION, "LED " + (ledOn ? "ON" : "OFF"));
                 mCallbacks.onDataSent(ledOn);
-                mCallbacks.onHandleCMDtoFF03(data);
+                final ThermostatCommand command = mCodec.decode(data);
+                if (command != null) {
+                    mCallbacks.onHandleCMDtoFF03(command);
+                    if (mWriteWithoutResponse)
+                        awaitConfirmation(command);
+                }
+                onCommandWriteCompleted();
             }
             Log.v(TAG,"Callback of write");
         }
@@ -146,6 +301,9 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
             if (characteristic == mConditionChaHandle)
             {
                 log(LogContract.Log.Level.APPLICATION, "Status Recieved" + data);
+                mLastStatusValue = data;
+                if (mWriteWithoutResponse)
+                    confirmCommands(ThermostatState.of(data));
                 mCallbacks.onHandleGetStatus(data);
                 /* Only for debug */
                 //Log.v(TAG,"notify data="+(data & 0xFF));
@@ -159,15 +317,202 @@ public class BlinkyManager extends BleManager<BlinkyManagerCallbacks> {
     /*
      *   This function send cmd to pheripheral device
      *   it will send to FF03 GATT characteristic.
-     *   @para: cmd : command type to device
+     *   Commands are written one at a time. While a write is in progress, a new command replaces
+     *   the pending command for the same actuator, so only the latest intent is sent.
+     *   @para: command : command to device
      */
-    public void sendCMDtoThermostat(int cmd)
+    public void sendCMDtoThermostat(final ThermostatCommand command)
     {
-        final byte[] command= new byte[] {(byte) cmd};
-        mCMDCharacteristic.setValue(command);
+        final ThermostatCommand.Actuator actuator = command.getActuator();
+        synchronized (mPendingCommands) {
+            if (mPendingCommands[actuator.ordinal()] == null)
+                mPendingActuators.add(actuator);
+            mPendingCommands[actuator.ordinal()] = command;
+            // A new intent starts with a fresh retry budget
+            mRetries[actuator.ordinal()] = 0;
+        }
         Log.v(TAG,"send cmd="+ command);
-        writeCharacteristic(mCMDCharacteristic);
+        onUserActivity();
+        sendNextCommand();
     }
 
+    /*
+     *   Requests the 2M PHY, if both the phone and the device support it. The library does not
+     *   report the PHY update, so only the request is reported.
+     */
+    private void requestLe2MPhy(final BluetoothGatt gatt) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O)
+            return;
+        final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null || !adapter.isLe2MPhySupported())
+            return;
+        gatt.setPreferredPhy(BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_LE_2M_MASK, BluetoothDevice.PHY_OPTION_NO_PREFERRED);
+        mLe2MPhyRequested = true;
+        log(LogContract.Log.Level.APPLICATION, "LE 2M PHY requested");
+    }
+
+    /*
+     *   Raises the connection priority while the user is controlling the device in the foreground
+     *   and schedules lowering it when idle.
+     */
+    private void onUserActivity() {
+        if (!Utils.isLollipopOrAbove())
+            return;
+        mHandler.removeCallbacks(mIdleTimeout);
+        if (mForeground) {
+            setConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+            mHandler.postDelayed(mIdleTimeout, IDLE_TIMEOUT);
+        } else {
+            setConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+        }
+    }
+
+    private void setConnectionPriority(final int priority) {
+        if (mConnectionPriority == priority || mGatt == null || !Utils.isLollipopOrAbove())
+            return;
+        mConnectionPriority = priority;
+        enqueue(Request.newConnectionPriorityRequest(priority));
+        log(LogContract.Log.Level.APPLICATION, "Connection priority requested: " + priority);
+        mCallbacks.onConnectionParametersChanged(mMtu, mConnectionPriority, mLe2MPhyRequested);
+    }
+
+    private final Runnable mIdleTimeout = () -> setConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_BALANCED);
+
+    private void sendNextCommand() {
+        final ThermostatCommand command;
+        synchronized (mPendingCommands) {
+            if (mCommandInFlight != null || mPendingActuators.isEmpty() || mCMDCharacteristic == null)
+                return;
+            final int index = mPendingActuators.poll().ordinal();
+            command = mPendingCommands[index];
+            mPendingCommands[index] = null;
+            mCommandInFlight = command;
+            mSequenceInFlight = ++mLastWriteSequence;
+        }
+        // Each request keeps its own copy of the value, so the characteristic value is not shared between writes
+        enqueue(Request.newWriteRequest(mCMDCharacteristic, mCodec.encode(command)));
+        mHandler.postDelayed(mWriteTimeout, WRITE_TIMEOUT);
+    }
+
+    /**
+     * Reports an error of a request. Once the device is ready only commands are written, so the error
+     * completes the oldest write that has not completed yet. The command is not retried.
+     */
+    public void onRequestFailed() {
+        synchronized (mPendingCommands) {
+            if (mLastCompletedSequence == mLastWriteSequence)
+                return;
+        }
+        onCommandWriteCompleted();
+    }
+
+    /*
+     *   Completes the write in flight if the completion has its sequence number. Otherwise the
+     *   completion belongs to an earlier write that has timed out and is ignored, so that the timeout
+     *   of the current write stays scheduled. This holds also when the same command was sent again.
+     */
+    private void onCommandWriteCompleted() {
+        synchronized (mPendingCommands) {
+            final int sequence = ++mLastCompletedSequence;
+            if (sequence != mSequenceInFlight) {
+                log(LogContract.Log.Level.DEBUG, "Late completion of write #" + sequence + " ignored");
+                return;
+            }
+            mSequenceInFlight = 0;
+            mCommandInFlight = null;
+        }
+        mHandler.removeCallbacks(mWriteTimeout);
+        sendNextCommand();
+    }
+
+    private void clearPendingCommands() {
+        mHandler.removeCallbacks(mWriteTimeout);
+        synchronized (mPendingCommands) {
+            Arrays.fill(mPendingCommands, null);
+            Arrays.fill(mUnconfirmedCommands, null);
+            Arrays.fill(mRetries, 0);
+            mPendingActuators.clear();
+            mCommandInFlight = null;
+            // Requests of the closed connection never complete
+            mSequenceInFlight = mLastWriteSequence = mLastCompletedSequence = 0;
+        }
+    }
+
+    /*
+     *   Marks a command written without response as sent and starts waiting for a status
+     *   notification that confirms it. The thermostat notifies only when its state changes, so
+     *   a command that the last known state already matches is confirmed at once.
+     */
+    private void awaitConfirmation(final ThermostatCommand command) {
+        final int index = command.getActuator().ordinal();
+        final int status = mLastStatusValue;
+        synchronized (mPendingCommands) {
+            if (status >= 0 && command.isConfirmedBy(ThermostatState.of(status))) {
+                mUnconfirmedCommands[index] = null;
+                mRetries[index] = 0;
+                return;
+            }
+            mUnconfirmedCommands[index] = command;
+            mConfirmationDeadlines[index] = SystemClock.elapsedRealtime() + CONFIRMATION_TIMEOUT;
+        }
+        mHandler.removeCallbacks(mConfirmationTimeout);
+        mHandler.postDelayed(mConfirmationTimeout, CONFIRMATION_TIMEOUT);
+    }
 
+    private void confirmCommands(final ThermostatState state) {
+        synchronized (mPendingCommands) {
+            for (int i = 0; i < mUnconfirmedCommands.length; i++) {
+                final ThermostatCommand command = mUnconfirmedCommands[i];
+                if (command != null && command.isConfirmedBy(state)) {
+                    mUnconfirmedCommands[i] = null;
+                    mRetries[i] = 0;
+                }
+            }
+        }
+    }
+
+    /*
+     *   Sends again commands that were not confirmed in time, unless a newer command
+     *   for the same actuator is already pending.
+     */
+    private final Runnable mConfirmationTimeout = () -> {
+        final long now = SystemClock.elapsedRealtime();
+        long nextDeadline = Long.MAX_VALUE;
+        synchronized (mPendingCommands) {
+            for (int i = 0; i < mUnconfirmedCommands.length; i++) {
+                final ThermostatCommand command = mUnconfirmedCommands[i];
+                if (command == null)
+                    continue;
+                if (mConfirmationDeadlines[i] > now) {
+                    nextDeadline = Math.min(nextDeadline, mConfirmationDeadlines[i]);
+                    continue;
+                }
+                mUnconfirmedCommands[i] = null;
+                if (mPendingCommands[i] != null) {
+                    mRetries[i] = 0;
+                } else if (mRetries[i] < MAX_RETRIES) {
+                    mRetries[i]++;
+                    mPendingCommands[i] = command;
+                    mPendingActuators.add(command.getActuator());
+                } else {
+                    mRetries[i] = 0;
+                    log(LogContract.Log.Level.WARNING, command + " not confirmed by the device");
+                }
+            }
+        }
+        if (nextDeadline != Long.MAX_VALUE)
+            mHandler.postDelayed(mConfirmationTimeout, nextDeadline - now);
+        sendNextCommand();
+    };
+
+    private final Runnable mWriteTimeout = () -> {
+        final ThermostatCommand command;
+        synchronized (mPendingCommands) {
+            command = mCommandInFlight;
+            mCommandInFlight = null;
+            mSequenceInFlight = 0;
+        }
+        log(LogContract.Log.Level.WARNING, "Command write timed out: " + command);
+        sendNextCommand();
+    };
 }
@@ -42,13 +42,21 @@ public interface BlinkyManagerCallbacks extends BleManagerCallbacks {
 	/*
 	 *   This function handle onwritecharterictic callback to update view
 	 *   if comand of turn on fast  send then view of slow should turn of and vice versa
-	 *   @param: data: data of last write to FF03 characteristic
+	 *   @param: command: command decoded from the last write to FF03 characteristic
 	 */
-	void onHandleCMDtoFF03(int data);
+	void onHandleCMDtoFF03(ThermostatCommand command);
 	/*
 	*	This Function update UI according to status sending from peripheral
 	*	@param: status according to SRS it will update UI.
 	*/
 	void onHandleGetStatus(int status);
+	/*
+	*	Called when the connection has been tuned during initialization or when the
+	*	connection priority changes.
+	*	@param: mtu the negotiated MTU
+	*	@param: connectionPriority the requested priority, one of BluetoothGatt.CONNECTION_PRIORITY_*
+	*	@param: le2MPhyRequested true if 2M PHY was requested
+	*/
+	void onConnectionParametersChanged(int mtu, int connectionPriority, boolean le2MPhyRequested);
 
 }
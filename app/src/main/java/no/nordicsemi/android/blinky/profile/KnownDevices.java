@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thermostats the app has connected to before, stored by address. Known devices may be
+ * connected to directly, without scanning.
+ */
+public class KnownDevices {
+	private final static String PREFS_NAME = "known_devices";
+	/** Stored for devices without a name, as putting a null value removes the entry. */
+	private final static String NO_NAME = "";
+
+	public static class KnownDevice {
+		public final String address;
+		public final String name;
+
+		/* package */ KnownDevice(final String address, final String name) {
+			this.address = address;
+			this.name = name;
+		}
+	}
+
+	private static KnownDevices sInstance;
+
+	private final SharedPreferences mPreferences;
+
+	/**
+	 * Returns the store, creating it on the first call.
+	 */
+	@NonNull
+	public static synchronized KnownDevices getInstance(@NonNull final Context context) {
+		if (sInstance == null)
+			sInstance = new KnownDevices(context.getApplicationContext());
+		return sInstance;
+	}
+
+	private KnownDevices(final Context context) {
+		mPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+	}
+
+	/**
+	 * Saves the device. The name is updated if the device is already known.
+	 */
+	public void add(@NonNull final String address, final String name) {
+		final String value = name != null ? name : NO_NAME;
+		if (value.equals(mPreferences.getString(address, null)))
+			return;
+		mPreferences.edit().putString(address, value).apply();
+	}
+
+	/**
+	 * Removes the device from the list of known devices.
+	 */
+	public void remove(@NonNull final String address) {
+		mPreferences.edit().remove(address).apply();
+	}
+
+	/**
+	 * Returns all known devices sorted by name.
+	 */
+	@NonNull
+	public List<KnownDevice> getAll() {
+		final List<KnownDevice> devices = new ArrayList<>();
+		for (final Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+			final Object name = entry.getValue();
+			final boolean named = name instanceof String && !NO_NAME.equals(name);
+			devices.add(new KnownDevice(entry.getKey(), named ? (String) name : null));
+		}
+		Collections.sort(devices, (a, b) -> {
+			final String nameA = a.name != null ? a.name : "";
+			final String nameB = b.name != null ? b.name : "";
+			final int result = nameA.compareToIgnoreCase(nameB);
+			return result != 0 ? result : a.address.compareTo(b.address);
+		});
+		return devices;
+	}
+}
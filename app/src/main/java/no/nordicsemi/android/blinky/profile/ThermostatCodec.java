@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Translates {@link ThermostatCommand}s to bytes written to the FF03 characteristic and back.
+ * The table is built once from resources, after that encoding and decoding do not allocate.
+ */
+public class ThermostatCodec {
+	private static ThermostatCodec sInstance;
+
+	private final int[] mCodes;
+	private final byte[][] mPayloads;
+	private final ThermostatCommand[] mCommands = new ThermostatCommand[256];
+
+	/**
+	 * Returns the codec, creating it on the first call.
+	 */
+	@NonNull
+	public static synchronized ThermostatCodec getInstance(@NonNull final Context context) {
+		if (sInstance == null)
+			sInstance = new ThermostatCodec(context.getApplicationContext().getResources());
+		return sInstance;
+	}
+
+	/* package */ ThermostatCodec(@NonNull final Resources resources) {
+		final ThermostatCommand[] commands = ThermostatCommand.values();
+		mCodes = new int[commands.length];
+		mPayloads = new byte[commands.length][];
+
+		for (final ThermostatCommand command : commands) {
+			final int code = resources.getInteger(command.getResId());
+			// Commands are sent as a single byte
+			if (code < 0 || code > 0xFF)
+				throw new IllegalArgumentException("Value of " + command + " does not fit in a byte: " + code);
+			if (mCommands[code] != null)
+				throw new IllegalArgumentException(command + " and " + mCommands[code] + " have the same value: " + code);
+
+			mCodes[command.ordinal()] = code;
+			mPayloads[command.ordinal()] = new byte[] { (byte) code };
+			mCommands[code] = command;
+		}
+	}
+
+	/**
+	 * Returns the value of the command.
+	 */
+	public int getCode(@NonNull final ThermostatCommand command) {
+		return mCodes[command.ordinal()];
+	}
+
+	/**
+	 * Returns the bytes to be written for the command. The returned array is shared and must not be modified.
+	 */
+	@NonNull
+	public byte[] encode(@NonNull final ThermostatCommand command) {
+		return mPayloads[command.ordinal()];
+	}
+
+	/**
+	 * Returns the command with the given value.
+	 *
+	 * @param data the value read from the FF03 characteristic
+	 * @return the command, or null if the value is unknown
+	 */
+	@Nullable
+	public ThermostatCommand decode(final int data) {
+		return mCommands[data & 0xFF];
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.support.annotation.IntegerRes;
+import android.support.annotation.NonNull;
+
+import no.nordicsemi.android.blinky.R;
+
+/**
+ * Commands that may be written to the FF03 characteristic. Values of the commands are defined
+ * in Thermostat_Integer.xml and resolved once by {@link ThermostatCodec}.
+ */
+public enum ThermostatCommand {
+	TURN_OFF_DEVICE(R.integer.turnofdevice, Actuator.POWER, ThermostatState.POWER, false),
+	START_FAST_TURN(R.integer.start_fastturn, Actuator.FAST_TURN, ThermostatState.FAST_TURN, true),
+	STOP_FAST_TURN(R.integer.stop_fastturn, Actuator.FAST_TURN, ThermostatState.FAST_TURN, false),
+	START_SLOW_TURN(R.integer.start_slowturn, Actuator.SLOW_TURN, ThermostatState.SLOW_TURN, true),
+	STOP_SLOW_TURN(R.integer.stop_slowturn, Actuator.SLOW_TURN, ThermostatState.SLOW_TURN, false),
+	START_PUMP(R.integer.start_pump, Actuator.PUMP, ThermostatState.PUMP, true),
+	STOP_PUMP(R.integer.stop_pump, Actuator.PUMP, ThermostatState.PUMP, false);
+
+	/**
+	 * The part of the thermostat a command controls. Only the latest pending command
+	 * for each actuator is sent.
+	 */
+	public enum Actuator {
+		POWER,
+		FAST_TURN,
+		SLOW_TURN,
+		PUMP
+	}
+
+	@IntegerRes
+	private final int resId;
+	private final Actuator actuator;
+	private final int stateBit;
+	private final boolean stateOn;
+
+	ThermostatCommand(@IntegerRes final int resId, final Actuator actuator, final int stateBit, final boolean stateOn) {
+		this.resId = resId;
+		this.actuator = actuator;
+		this.stateBit = stateBit;
+		this.stateOn = stateOn;
+	}
+
+	/**
+	 * Returns the actuator controlled by this command.
+	 */
+	public Actuator getActuator() {
+		return actuator;
+	}
+
+	/**
+	 * Returns whether the status reported by the thermostat shows that this command has been applied.
+	 *
+	 * @param state the state notified on the FF02 characteristic
+	 */
+	public boolean isConfirmedBy(@NonNull final ThermostatState state) {
+		return ((state.getBits() & stateBit) != 0) == stateOn;
+	}
+
+	/**
+	 * Returns the integer resource holding the value of this command.
+	 */
+	@IntegerRes
+	public int getResId() {
+		return resId;
+	}
+}
@@ -0,0 +1,381 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.arch.core.util.Function;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Transformations;
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.os.SystemClock;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import no.nordicsemi.android.blinky.R;
+import no.nordicsemi.android.blinky.utils.LiveDataUtils;
+import no.nordicsemi.android.log.LogSession;
+import no.nordicsemi.android.log.Logger;
+
+/**
+ * A connection to a single thermostat. The connection holds the {@link BlinkyManager} and
+ * the state reported by the device, so it may outlive the screen that opened it.
+ * Connections are created and pooled by {@link ThermostatFleet}.
+ */
+public class ThermostatConnection implements BlinkyManagerCallbacks {
+	private final String TAG = "ThermostatConnection";
+
+	private final Context mContext;
+	private final ThermostatFleet mFleet;
+	private final BluetoothDevice mDevice;
+	private final String mName;
+	private final BlinkyManager mBlinkyManager;
+
+	// Connection states Connecting, Connected, Disconnecting, Disconnected etc.
+	private final MutableLiveData<String> mConnectionState = new MutableLiveData<>();
+
+	// Flag to determine if the device is connected
+	private final MutableLiveData<Boolean> mIsConnected = new MutableLiveData<>();
+
+	// Flag to determine if the device is ready
+	private final MutableLiveData<Void> mOnDeviceReady = new MutableLiveData<>();
+	// Error messages to be shown to the user
+	private final MutableLiveData<String> mError = new MutableLiveData<>();
+	// The last known thermostat state, emitted only when any bit changes
+	private final MutableLiveData<ThermostatState> mThermostatState = new MutableLiveData<>();
+	// The last state posted to mThermostatState, guarded by this
+	private ThermostatState mLastState;
+	// Flag that holds the on off state of the pump. On is turn on, Off is turn off
+	private final LiveData<Boolean> mPUMPState = select(ThermostatState::isPumpOn);
+	// Flag that holds the on off state of the slow turn. On is turn on, Off is turn off
+	private final LiveData<Boolean> mSLOWState = select(ThermostatState::isSlowTurnOn);
+	// Flag that holds the on off state of the fast turn. On is turn on, Off is turn off
+	private final LiveData<Boolean> mFASTState = select(ThermostatState::isFastTurnOn);
+	// Flag that holds the on off state of the device. On is turn on, Off is turn off
+	private final LiveData<Boolean> mPowerState = select(ThermostatState::isPowerOn);
+
+	// Number of screens using this connection, guarded by the fleet
+	private int mUsers;
+	// True from connect() until the device disconnects
+	private volatile boolean mConnectedOrConnecting;
+	// Time of the last connect() call and the time it took to become ready, in milliseconds
+	private long mConnectStartTime;
+	private volatile long mTimeToReady = -1;
+	private LogSession mLogSession;
+
+	@MainThread
+	/* package */ ThermostatConnection(@NonNull final Context context, @NonNull final ThermostatFleet fleet,
+									   @NonNull final BluetoothDevice device, final String name) {
+		mContext = context.getApplicationContext();
+		mFleet = fleet;
+		mDevice = device;
+		mName = name;
+
+		// Initialize the manager
+		mBlinkyManager = new BlinkyManager(mContext);
+		mBlinkyManager.setGattCallbacks(this);
+	}
+
+	public LiveData<Void> isDeviceReady() {
+		return mOnDeviceReady;
+	}
+
+	public LiveData<String> getConnectionState() {
+		return mConnectionState;
+	}
+
+	public LiveData<Boolean> isConnected() {
+		return mIsConnected;
+	}
+
+	/**
+	 * Returns the LiveData with error messages. A connection that failed before the device
+	 * became ready, or to a device that is not supported, is closed after the error.
+	 */
+	public LiveData<String> getError() {
+		return mError;
+	}
+
+	public LiveData<ThermostatState> getThermostatState() {
+		return mThermostatState;
+	}
+
+	public LiveData<Boolean> getSLOWState() {
+		return mSLOWState;
+	}
+
+	public LiveData<Boolean> getFASTState() {
+		return mFASTState;
+	}
+
+	public LiveData<Boolean> getPUMPState() {
+		return mPUMPState;
+	}
+
+	public LiveData<Boolean> getPowerState() {
+		return mPowerState;
+	}
+
+	@NonNull
+	public BluetoothDevice getDevice() {
+		return mDevice;
+	}
+
+	public String getAddress() {
+		return mDevice.getAddress();
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	@NonNull
+	public BlinkyManager getManager() {
+		return mBlinkyManager;
+	}
+
+	/**
+	 * Returns true if the device is connected, or the connection is being established.
+	 */
+	public boolean isConnectedOrConnecting() {
+		return mConnectedOrConnecting;
+	}
+
+	/**
+	 * Sends the command to the thermostat.
+	 */
+	public void send(@NonNull final ThermostatCommand command) {
+		mBlinkyManager.sendCMDtoThermostat(command);
+	}
+
+	/**
+	 * Returns true if the device is connected and initialized.
+	 */
+	/* package */ boolean isReady() {
+		return mConnectedOrConnecting && mTimeToReady != -1;
+	}
+
+	/* package */ int getUsers() {
+		return mUsers;
+	}
+
+	@MainThread
+	/* package */ void acquire() {
+		mUsers++;
+		// Errors reported before are not shown again on a new screen
+		mError.setValue(null);
+	}
+
+	/* package */ void release() {
+		mUsers--;
+	}
+
+	/**
+	 * Connect to peripheral
+	 */
+	/* package */ void connect(final boolean autoConnect) {
+		mConnectedOrConnecting = true;
+		mBlinkyManager.setAutoConnect(autoConnect);
+		mConnectStartTime = SystemClock.elapsedRealtime();
+		mTimeToReady = -1;
+		mLogSession = Logger.newSession(mContext, null, mDevice.getAddress(), mName);
+		mBlinkyManager.setLogger(mLogSession);
+		mBlinkyManager.connect(mDevice);
+	}
+
+	/**
+	 * Disconnect from peripheral
+	 */
+	/* package */ void disconnect() {
+		mConnectedOrConnecting = false;
+		mBlinkyManager.disconnect();
+	}
+
+	@Override
+	public void onDataReceived(final boolean state) {
+
+	}
+
+	@Override
+	public void onDataSent(final boolean state) {
+
+	}
+
+	@Override
+	public void onDeviceConnecting(final BluetoothDevice device) {
+		mConnectionState.postValue(mContext.getString(R.string.state_connecting));
+	}
+
+	@Override
+	public void onDeviceConnected(final BluetoothDevice device) {
+		mIsConnected.postValue(true);
+		mConnectionState.postValue(mContext.getString(R.string.state_discovering_services));
+	}
+
+	@Override
+	public void onDeviceDisconnecting(final BluetoothDevice device) {
+		mIsConnected.postValue(false);
+	}
+
+	@Override
+	public void onDeviceDisconnected(final BluetoothDevice device) {
+		mConnectedOrConnecting = false;
+		mIsConnected.postValue(false);
+		mFleet.onDisconnected(this);
+	}
+
+	@Override
+	public void onLinklossOccur(final BluetoothDevice device) {
+		mConnectedOrConnecting = false;
+		mIsConnected.postValue(false);
+		mFleet.onDisconnected(this);
+	}
+
+	@Override
+	public void onServicesDiscovered(final BluetoothDevice device, final boolean optionalServicesFound) {
+		mConnectionState.postValue(mContext.getString(R.string.state_initializing));
+	}
+
+	@Override
+	public void onDeviceReady(final BluetoothDevice device) {
+		KnownDevices.getInstance(mContext).add(mDevice.getAddress(), mName);
+		mTimeToReady = SystemClock.elapsedRealtime() - mConnectStartTime;
+		Logger.i(mLogSession, "Ready in " + mTimeToReady + " ms");
+		Log.i(TAG, device.getAddress() + " ready in " + mTimeToReady + " ms");
+		mConnectionState.postValue(mContext.getString(R.string.state_discovering_services_completed, device.getName()));
+		mOnDeviceReady.postValue(null);
+	}
+
+	@Override
+	public boolean shouldEnableBatteryLevelNotifications(final BluetoothDevice device) {
+		// Blinky doesn't have Battery Service
+		return false;
+	}
+
+	@Override
+	public void onBatteryValueReceived(final BluetoothDevice device, final int value) {
+		// Blinky doesn't have Battery Service
+	}
+
+	@Override
+	public void onBondingRequired(final BluetoothDevice device) {
+		// Blinky does not require bonding
+	}
+
+	@Override
+	public void onBonded(final BluetoothDevice device) {
+		// Blinky does not require bonding
+	}
+
+	@Override
+	public void onError(final BluetoothDevice device, final String message, final int errorCode) {
+		Logger.e(mLogSession, "Error " + errorCode + ": " + message);
+		Log.e(TAG, device.getAddress() + " error " + errorCode + ": " + message);
+		mError.postValue(mContext.getString(R.string.state_error, message, errorCode));
+		// Errors after the device is ready, e.g. a failed write, are handled by the manager.
+		// An error during connection or initialization leaves the connection unusable
+		if (mTimeToReady == -1)
+			mFleet.remove(this);
+		else
+			mBlinkyManager.onRequestFailed();
+	}
+
+	@Override
+	public void onDeviceNotSupported(final BluetoothDevice device) {
+		Logger.w(mLogSession, "Device not supported");
+		Log.w(TAG, device.getAddress() + " not supported");
+		mError.postValue(mContext.getString(R.string.state_not_supported));
+		mFleet.remove(this);
+	}
+
+	/*
+	 *   This function handle onwritecharterictic callback to update view
+	 *   if comand of turn on fast  send then view of slow should turn of and vice versa
+	 *   @para: command: command decoded from the last write to FF03 characteristic
+	 */
+	@Override
+	public void onHandleCMDtoFF03(final ThermostatCommand command)
+	{
+		switch (command) {
+			// if cmd to turn on fast turn is received then turn of slow
+			case START_FAST_TURN:
+				updateState(ThermostatState.POWER, ThermostatState.SLOW_TURN);
+				break;
+			// if cmd to turn on slow turn is received then turn of high
+			case START_SLOW_TURN:
+				updateState(ThermostatState.POWER, ThermostatState.FAST_TURN);
+				break;
+			case START_PUMP:
+				updateState(ThermostatState.POWER, 0);
+				break;
+			case TURN_OFF_DEVICE:
+				// update livedata (turning of all pump turn icon.
+				updateState(0, ThermostatState.FAST_TURN | ThermostatState.SLOW_TURN
+						| ThermostatState.PUMP | ThermostatState.POWER);
+				break;
+		}
+	}
+
+	/*
+	 *	This Function update UI according to status sending from peripheral
+	 *	@param: status according to SRS it will update UI.
+	 */
+	@Override
+	public void onHandleGetStatus(int status)
+	{
+		publishState(ThermostatState.of(status));
+	}
+
+	@Override
+	public void onConnectionParametersChanged(final int mtu, final int connectionPriority, final boolean le2MPhyRequested) {
+		Log.v(TAG, "MTU=" + mtu + " priority=" + connectionPriority + " 2M PHY=" + le2MPhyRequested);
+	}
+
+	private synchronized void updateState(final int set, final int clear) {
+		final ThermostatState current = mLastState != null ? mLastState : ThermostatState.of(0);
+		publishState(current.with(set, clear));
+	}
+
+	/*
+	 *	Posts the state only if any bit differs from the last posted one
+	 */
+	private synchronized void publishState(final ThermostatState state) {
+		if (mLastState != null && mLastState.diff(state) == 0)
+			return;
+		mLastState = state;
+		mThermostatState.postValue(state);
+	}
+
+	private LiveData<Boolean> select(final Function<ThermostatState, Boolean> selector) {
+		return LiveDataUtils.distinctUntilChanged(Transformations.map(mThermostatState, selector));
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Keeps a bounded pool of connections to thermostats, keyed by device address.
+ * A connection stays open after its screen is closed, so switching back to a connected unit
+ * is instant and its status keeps streaming. When the pool is full, a connection that no screen
+ * is using is closed. Connections that are not ready, e.g. waiting for a device out of range,
+ * are closed first, then ready ones, the least recently used one first in both cases.
+ * Connections in use are never evicted, so when all of them are in use a new connection is refused.
+ * Idle connections are closed by {@link ThermostatService} after its idle timeout.
+ */
+public class ThermostatFleet {
+	private final static String TAG = "ThermostatFleet";
+	/**
+	 * Maximum number of open connections. Android allows up to 7 concurrent LE connections,
+	 * some of them may be used by other apps.
+	 */
+	public final static int MAX_CONNECTIONS = 4;
+
+	private static ThermostatFleet sInstance;
+
+	private final Context mContext;
+	/** Connections in access order, the least recently used one first. Guarded by this. */
+	private final LinkedHashMap<String, ThermostatConnection> mConnections = new LinkedHashMap<>(MAX_CONNECTIONS * 2, 0.75f, true);
+
+	/**
+	 * Returns the fleet, creating it on the first call.
+	 */
+	@NonNull
+	public static synchronized ThermostatFleet getInstance(@NonNull final Context context) {
+		if (sInstance == null)
+			sInstance = new ThermostatFleet(context.getApplicationContext());
+		return sInstance;
+	}
+
+	private ThermostatFleet(final Context context) {
+		mContext = context;
+	}
+
+	/**
+	 * Returns a connection to the given device, connecting if needed, and marks it as used.
+	 * Each call must be balanced with {@link #release(ThermostatConnection)}.
+	 *
+	 * @param device      the device to connect to
+	 * @param name        the device name, used in logs
+	 * @param autoConnect true to wait for the device to come in range, used for direct
+	 *                    connections to known devices without scanning
+	 * @return the connection, or null if the pool is full and all connections are in use
+	 */
+	@MainThread
+	@Nullable
+	public synchronized ThermostatConnection acquire(@NonNull final BluetoothDevice device, final String name,
+													 final boolean autoConnect) {
+		ThermostatConnection connection = mConnections.get(device.getAddress());
+		if (connection == null) {
+			if (!evictIfFull()) {
+				Log.w(TAG, "All " + mConnections.size() + " connections are in use, " + device.getAddress() + " refused");
+				return null;
+			}
+			connection = new ThermostatConnection(mContext, this, device, name);
+			mConnections.put(device.getAddress(), connection);
+		}
+		connection.acquire();
+		if (!connection.isConnectedOrConnecting())
+			connection.connect(autoConnect);
+		return connection;
+	}
+
+	/**
+	 * Marks the connection as no longer used by the caller. The connection stays open
+	 * until it is evicted or {@link #closeIdle()} is called.
+	 */
+	public synchronized void release(@NonNull final ThermostatConnection connection) {
+		connection.release();
+		// The connection may have been removed and replaced by a new one to the same device
+		if (connection.getUsers() == 0 && !connection.isConnectedOrConnecting()
+				&& mConnections.get(connection.getAddress()) == connection)
+			mConnections.remove(connection.getAddress());
+	}
+
+	/**
+	 * Returns true if there are no connections in the pool.
+	 */
+	public synchronized boolean isEmpty() {
+		return mConnections.isEmpty();
+	}
+
+	/**
+	 * Closes all connections that are not used by any screen.
+	 */
+	public synchronized void closeIdle() {
+		final Iterator<ThermostatConnection> iterator = mConnections.values().iterator();
+		while (iterator.hasNext()) {
+			final ThermostatConnection connection = iterator.next();
+			if (connection.getUsers() == 0) {
+				iterator.remove();
+				connection.disconnect();
+			}
+		}
+	}
+
+	/**
+	 * Removes the connection from the pool and closes it, also if it is in use. Screens using it
+	 * are notified by the connection and the next {@link #acquire(BluetoothDevice, String, boolean)}
+	 * creates a new one.
+	 */
+	/* package */ synchronized void remove(@NonNull final ThermostatConnection connection) {
+		if (mConnections.get(connection.getAddress()) == connection)
+			mConnections.remove(connection.getAddress());
+		connection.disconnect();
+	}
+
+	/* package */ synchronized void onDisconnected(@NonNull final ThermostatConnection connection) {
+		// Connections in use are reconnected on the next acquire(...)
+		if (connection.getUsers() == 0 && mConnections.get(connection.getAddress()) == connection)
+			mConnections.remove(connection.getAddress());
+	}
+
+	/**
+	 * Closes connections not in use until there is room for a new one, those that are not ready first.
+	 *
+	 * @return true if a new connection may be opened
+	 */
+	private boolean evictIfFull() {
+		evict(false);
+		evict(true);
+		return mConnections.size() < MAX_CONNECTIONS;
+	}
+
+	/**
+	 * Closes the least recently used connections not in use in the given state while the pool is full.
+	 */
+	private void evict(final boolean ready) {
+		final Iterator<ThermostatConnection> iterator = mConnections.values().iterator();
+		while (mConnections.size() >= MAX_CONNECTIONS && iterator.hasNext()) {
+			final ThermostatConnection connection = iterator.next();
+			if (connection.getUsers() == 0 && connection.isReady() == ready) {
+				iterator.remove();
+				connection.disconnect();
+				Log.v(TAG, "Evicted " + connection.getAddress());
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.IBinder;
+import android.support.annotation.NonNull;
+import android.support.v4.app.NotificationCompat;
+
+import no.nordicsemi.android.blinky.R;
+import no.nordicsemi.android.blinky.ScannerActivity;
+
+/**
+ * A foreground service hosting the connections of {@link ThermostatFleet}, so they outlive
+ * the control screen. Screens bind to the service while they are open. The binding only keeps
+ * the service alive, the connections are obtained from the fleet directly. When the last screen
+ * unbinds, the connections are kept for {@link #IDLE_TIMEOUT} and then closed, unless a screen
+ * attaches again.
+ */
+public class ThermostatService extends Service {
+	/**
+	 * Time after the last screen detaches after which the idle connections are closed.
+	 */
+	public final static long IDLE_TIMEOUT = 2 * 60 * 1000; // ms
+
+	private final static String CHANNEL_ID = "connections";
+	private final static int NOTIFICATION_ID = 1;
+
+	private final Handler mHandler = new Handler();
+	// The binder has no API, a non-null binder is returned so that the screens are connected
+	private final IBinder mBinder = new Binder();
+	private ThermostatFleet mFleet;
+	private boolean mStarted;
+
+	/**
+	 * Binds the given connection to the service, starting it if needed.
+	 */
+	public static boolean bind(@NonNull final Context context, @NonNull final ServiceConnection connection) {
+		return context.bindService(new Intent(context, ThermostatService.class), connection, Context.BIND_AUTO_CREATE);
+	}
+
+	@Override
+	public void onCreate() {
+		super.onCreate();
+		mFleet = ThermostatFleet.getInstance(this);
+	}
+
+	@Override
+	public IBinder onBind(final Intent intent) {
+		onAttached();
+		return mBinder;
+	}
+
+	@Override
+	public void onRebind(final Intent intent) {
+		onAttached();
+	}
+
+	@Override
+	public boolean onUnbind(final Intent intent) {
+		// Keep the connections open for a while, reopening the screen is then instant
+		mHandler.postDelayed(mIdleTimeout, IDLE_TIMEOUT);
+		// Call onRebind(...) when a screen binds again
+		return true;
+	}
+
+	@Override
+	public void onDestroy() {
+		mHandler.removeCallbacks(mIdleTimeout);
+		mFleet.closeIdle();
+		super.onDestroy();
+	}
+
+	private void onAttached() {
+		mHandler.removeCallbacks(mIdleTimeout);
+		if (!mStarted) {
+			// Start the service, so it is not destroyed when the last screen unbinds
+			mStarted = true;
+			startService(new Intent(this, ThermostatService.class));
+			startForeground(NOTIFICATION_ID, createNotification());
+		}
+	}
+
+	private final Runnable mIdleTimeout = () -> {
+		mFleet.closeIdle();
+		if (mFleet.isEmpty()) {
+			mStarted = false;
+			stopForeground(true);
+			stopSelf();
+		}
+	};
+
+	private Notification createNotification() {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+			final NotificationChannel channel = new NotificationChannel(CHANNEL_ID,
+					getString(R.string.notification_channel_connections), NotificationManager.IMPORTANCE_LOW);
+			final NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
+			if (manager != null)
+				manager.createNotificationChannel(channel);
+		}
+
+		final Intent intent = new Intent(this, ScannerActivity.class);
+		final PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, intent, 0);
+		return new NotificationCompat.Builder(this, CHANNEL_ID)
+				.setSmallIcon(R.drawable.ic_blinky_feature)
+				.setContentTitle(getString(R.string.app_name))
+				.setContentText(getString(R.string.notification_connections_open))
+				.setContentIntent(pendingIntent)
+				.setOngoing(true)
+				.build();
+	}
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.profile;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Immutable snapshot of the thermostat status byte notified on the FF02 characteristic.
+ * There are only 256 possible states, so all instances are created up front and
+ * {@link #of(int)} never allocates.
+ */
+public final class ThermostatState {
+	public static final int FAST_TURN = 1;
+	public static final int SLOW_TURN = 1 << 1;
+	public static final int PUMP = 1 << 2;
+	public static final int TEMPERATURE_CONTROL = 1 << 3;
+	public static final int TIME_CONTROL = 1 << 4;
+	public static final int POWER = 1 << 7;
+
+	private static final ThermostatState[] STATES = new ThermostatState[256];
+	static {
+		for (int i = 0; i < STATES.length; i++)
+			STATES[i] = new ThermostatState(i);
+	}
+
+	private final int bits;
+
+	private ThermostatState(final int bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Returns the state for given status byte.
+	 */
+	@NonNull
+	public static ThermostatState of(final int status) {
+		return STATES[status & 0xFF];
+	}
+
+	/**
+	 * Returns a state with given bits set and cleared.
+	 */
+	@NonNull
+	public ThermostatState with(final int set, final int clear) {
+		return of((bits | set) & ~clear);
+	}
+
+	/**
+	 * Returns the bits that differ between this and the other state.
+	 */
+	public int diff(@NonNull final ThermostatState other) {
+		return bits ^ other.bits;
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	public boolean isFastTurnOn() {
+		return (bits & FAST_TURN) != 0;
+	}
+
+	public boolean isSlowTurnOn() {
+		return (bits & SLOW_TURN) != 0;
+	}
+
+	public boolean isPumpOn() {
+		return (bits & PUMP) != 0;
+	}
+
+	public boolean isTemperatureControlOn() {
+		return (bits & TEMPERATURE_CONTROL) != 0;
+	}
+
+	public boolean isTimeControlOn() {
+		return (bits & TIME_CONTROL) != 0;
+	}
+
+	public boolean isPowerOn() {
+		return (bits & POWER) != 0;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		return o instanceof ThermostatState && ((ThermostatState) o).bits == bits;
+	}
+
+	@Override
+	public int hashCode() {
+		return bits;
+	}
+
+	@Override
+	public String toString() {
+		return "ThermostatState{0x" + Integer.toHexString(bits) + "}";
+	}
+}
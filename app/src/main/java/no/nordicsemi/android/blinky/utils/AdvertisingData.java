@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import android.support.annotation.Nullable;
+
+import java.nio.charset.Charset;
+
+/**
+ * A reusable parser of the raw advertising data, as returned by
+ * {@code ScanRecord#getBytes()}. Parsing only records offsets of the AD structures of interest,
+ * nothing is copied or allocated. The device name may be compared to a cached name in place,
+ * so that a new String needs to be decoded only when the name has actually changed.
+ * <p>
+ * An instance may be reused for subsequent packets, but is not thread safe.
+ */
+public class AdvertisingData {
+	private static final int TYPE_UUID16_INCOMPLETE = 0x02;
+	private static final int TYPE_UUID16 = 0x03;
+	private static final int TYPE_UUID128_INCOMPLETE = 0x06;
+	private static final int TYPE_UUID128 = 0x07;
+	private static final int TYPE_LOCAL_NAME_SHORT = 0x08;
+	private static final int TYPE_LOCAL_NAME_COMPLETE = 0x09;
+	private static final int TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
+	/** Max number of service UUID lists recorded, a packet has room for a few at most. */
+	private static final int MAX_UUID_LISTS = 4;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	/** The lower 12 bytes of the Bluetooth Base UUID, in little endian. */
+	private static final byte[] BASE_UUID = {
+			(byte) 0xFB, 0x34, (byte) 0x9B, 0x5F, (byte) 0x80, 0x00, 0x00, (byte) 0x80, 0x00, 0x10, 0x00, 0x00
+	};
+
+	private byte[] mData;
+	private int mNameOffset;
+	private int mNameLength;
+	private final int[] mUuid16Offsets = new int[MAX_UUID_LISTS];
+	private final int[] mUuid16Lengths = new int[MAX_UUID_LISTS];
+	private int mUuid16Lists;
+	private final int[] mUuid128Offsets = new int[MAX_UUID_LISTS];
+	private final int[] mUuid128Lengths = new int[MAX_UUID_LISTS];
+	private int mUuid128Lists;
+	private int mManufacturerOffset;
+	private int mManufacturerLength;
+
+	/**
+	 * Parses the given advertising data. The array is referenced until the next call,
+	 * it must not be modified in the meantime.
+	 *
+	 * @param data the raw advertising data, may be null
+	 * @return false if the data were null or malformed, in which case only the structures
+	 * before the malformed one are available
+	 */
+	public boolean parse(@Nullable final byte[] data) {
+		mData = data;
+		mNameOffset = mManufacturerOffset = -1;
+		mNameLength = mManufacturerLength = 0;
+		mUuid16Lists = mUuid128Lists = 0;
+		if (data == null)
+			return false;
+
+		int offset = 0;
+		while (offset < data.length) {
+			final int length = data[offset] & 0xFF;
+			// A zero length field marks the end of significant data
+			if (length == 0)
+				return true;
+			if (offset + 1 + length > data.length)
+				return false;
+			final int type = data[offset + 1] & 0xFF;
+			final int start = offset + 2;
+			final int dataLength = length - 1;
+			switch (type) {
+				case TYPE_LOCAL_NAME_COMPLETE:
+					mNameOffset = start;
+					mNameLength = dataLength;
+					break;
+				case TYPE_LOCAL_NAME_SHORT:
+					// The complete name is preferred
+					if (mNameOffset == -1) {
+						mNameOffset = start;
+						mNameLength = dataLength;
+					}
+					break;
+				case TYPE_UUID16:
+				case TYPE_UUID16_INCOMPLETE:
+					if (mUuid16Lists < MAX_UUID_LISTS) {
+						mUuid16Offsets[mUuid16Lists] = start;
+						mUuid16Lengths[mUuid16Lists++] = dataLength;
+					}
+					break;
+				case TYPE_UUID128:
+				case TYPE_UUID128_INCOMPLETE:
+					if (mUuid128Lists < MAX_UUID_LISTS) {
+						mUuid128Offsets[mUuid128Lists] = start;
+						mUuid128Lengths[mUuid128Lists++] = dataLength;
+					}
+					break;
+				case TYPE_MANUFACTURER_SPECIFIC_DATA:
+					if (mManufacturerOffset == -1 && dataLength >= 2) {
+						mManufacturerOffset = start;
+						mManufacturerLength = dataLength;
+					}
+					break;
+			}
+			offset += 1 + length;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the parsed data.
+	 */
+	@Nullable
+	public byte[] getBytes() {
+		return mData;
+	}
+
+	/**
+	 * Returns whether the packet contains the device name.
+	 */
+	public boolean hasName() {
+		return mNameOffset != -1;
+	}
+
+	/**
+	 * Returns the offset of the name in the array returned by {@link #getBytes()},
+	 * or -1 if not present.
+	 */
+	public int getNameOffset() {
+		return mNameOffset;
+	}
+
+	/**
+	 * Returns the length of the name in bytes.
+	 */
+	public int getNameLength() {
+		return mNameLength;
+	}
+
+	/**
+	 * Compares the name in the packet with the given one without decoding it.
+	 *
+	 * @param name the name to compare with, may be null
+	 * @return true if both are missing or equal
+	 */
+	public boolean nameEquals(@Nullable final String name) {
+		if (mNameOffset == -1 || name == null)
+			return mNameOffset == -1 && name == null;
+		// ASCII names are compared byte by byte, others are decoded
+		if (name.length() != mNameLength)
+			return !isAscii(mNameOffset, mNameLength) && name.equals(getName());
+		for (int i = 0; i < mNameLength; i++) {
+			final int b = mData[mNameOffset + i];
+			if (b < 0)
+				return name.equals(getName());
+			if (b != name.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes the device name. This allocates a new String.
+	 *
+	 * @return the complete local name, or the shortened one, or null if not present
+	 */
+	@Nullable
+	public String getName() {
+		if (mNameOffset == -1)
+			return null;
+		return new String(mData, mNameOffset, mNameLength, UTF_8);
+	}
+
+	/**
+	 * Returns whether the packet advertises a service with given 16-bit UUID, either in a list
+	 * of 16-bit UUIDs or as a 128-bit UUID based on the Bluetooth Base UUID.
+	 *
+	 * @param uuid16 the 16-bit UUID, e.g. 0xFF01
+	 */
+	public boolean hasServiceUuid(final int uuid16) {
+		for (int l = 0; l < mUuid16Lists; l++) {
+			final int end = mUuid16Offsets[l] + mUuid16Lengths[l] - 1;
+			for (int i = mUuid16Offsets[l]; i < end; i += 2) {
+				if (readUInt16(i) == uuid16)
+					return true;
+			}
+		}
+		for (int l = 0; l < mUuid128Lists; l++) {
+			final int end = mUuid128Offsets[l] + mUuid128Lengths[l] - 15;
+			for (int i = mUuid128Offsets[l]; i < end; i += 16) {
+				if (isBaseUuid(i) && readUInt16(i + 12) == uuid16)
+					return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the number of 16-bit service UUIDs in the packet.
+	 */
+	public int getServiceUuid16Count() {
+		int count = 0;
+		for (int l = 0; l < mUuid16Lists; l++)
+			count += mUuid16Lengths[l] / 2;
+		return count;
+	}
+
+	/**
+	 * Returns the 16-bit service UUID with given index.
+	 *
+	 * @param index the index, from 0 to {@link #getServiceUuid16Count()} - 1
+	 */
+	public int getServiceUuid16(int index) {
+		for (int l = 0; l < mUuid16Lists; l++) {
+			final int count = mUuid16Lengths[l] / 2;
+			if (index < count)
+				return readUInt16(mUuid16Offsets[l] + index * 2);
+			index -= count;
+		}
+		throw new IndexOutOfBoundsException();
+	}
+
+	/**
+	 * Returns the company identifier of the first manufacturer specific data,
+	 * or -1 if not present.
+	 */
+	public int getManufacturerId() {
+		return mManufacturerOffset != -1 ? readUInt16(mManufacturerOffset) : -1;
+	}
+
+	/**
+	 * Returns the offset of the manufacturer specific data, following the company identifier,
+	 * in the array returned by {@link #getBytes()}, or -1 if not present.
+	 */
+	public int getManufacturerDataOffset() {
+		return mManufacturerOffset != -1 ? mManufacturerOffset + 2 : -1;
+	}
+
+	/**
+	 * Returns the length of the manufacturer specific data, excluding the company identifier.
+	 */
+	public int getManufacturerDataLength() {
+		return mManufacturerOffset != -1 ? mManufacturerLength - 2 : 0;
+	}
+
+	private int readUInt16(final int offset) {
+		return (mData[offset] & 0xFF) | ((mData[offset + 1] & 0xFF) << 8);
+	}
+
+	/**
+	 * Returns whether the 128-bit UUID at given offset, in little endian, is based on
+	 * the Bluetooth Base UUID 0000xxxx-0000-1000-8000-00805F9B34FB.
+	 */
+	private boolean isBaseUuid(final int offset) {
+		for (int i = 0; i < 12; i++) {
+			if (mData[offset + i] != BASE_UUID[i])
+				return false;
+		}
+		return mData[offset + 14] == 0 && mData[offset + 15] == 0;
+	}
+
+	private boolean isAscii(final int offset, final int length) {
+		for (int i = offset; i < offset + length; i++) {
+			if (mData[i] < 0)
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import android.support.annotation.NonNull;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Matches advertised device names and manufacturer IDs against a set of patterns.
+ * Name patterns, both exact and prefixes, are compiled into a byte trie, so matching a name
+ * takes one step per name byte regardless of the number of patterns. Manufacturer IDs are kept
+ * in a bit set indexed by the company ID.
+ * <p>
+ * The trie is stored in primitive arrays: edges of each node are a sorted range of labels
+ * and targets, searched using binary search.
+ */
+public class DevicePatternMatcher {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int FLAG_EXACT = 1;
+	private static final int FLAG_PREFIX = 2;
+
+	/** Flags of each node. */
+	private final byte[] mFlags;
+	/** Index of the first edge of each node, edges of node n end at mEdgeStart[n + 1]. */
+	private final int[] mEdgeStart;
+	private final byte[] mLabels;
+	private final int[] mTargets;
+	private final long[] mManufacturerIds;
+	private final boolean mHasPrefixes;
+	private final boolean mHasManufacturerIds;
+	/** Patterns that can also be given to the scanner as filters. */
+	private final List<String> mExactNames;
+	private final int[] mManufacturerIdList;
+
+	/**
+	 * Compiles patterns in the format used by the {@code scanner_device_patterns} resource:
+	 * {@code name:<name>}, {@code prefix:<prefix>} or {@code manufacturer:<company id>}.
+	 *
+	 * @param patterns the patterns
+	 * @return the matcher
+	 * @throws IllegalArgumentException if a pattern is malformed
+	 */
+	@NonNull
+	public static DevicePatternMatcher compile(@NonNull final String[] patterns) {
+		final Builder builder = new Builder();
+		for (final String pattern : patterns) {
+			final int colon = pattern.indexOf(':');
+			if (colon == -1)
+				throw new IllegalArgumentException("Malformed pattern: " + pattern);
+			final String type = pattern.substring(0, colon);
+			final String value = pattern.substring(colon + 1);
+			switch (type) {
+				case "name":
+					builder.addName(value);
+					break;
+				case "prefix":
+					builder.addPrefix(value);
+					break;
+				case "manufacturer":
+					builder.addManufacturerId(Integer.decode(value));
+					break;
+				default:
+					throw new IllegalArgumentException("Unknown pattern type: " + pattern);
+			}
+		}
+		return builder.build();
+	}
+
+	public static class Builder {
+		/** Children of each node, 256 entries per node, 0 meaning no child. Only used when building. */
+		private int[] mChildren = new int[256 * 16];
+		private byte[] mFlags = new byte[16];
+		private int mNodes = 1; // the root
+		private final long[] mManufacturerIds = new long[1024];
+		private boolean mHasPrefixes;
+		private final List<String> mExactNames = new ArrayList<>();
+		private int[] mManufacturerIdList = new int[0];
+
+		public Builder addName(@NonNull final String name) {
+			final int node = insert(name);
+			mFlags[node] |= FLAG_EXACT;
+			mExactNames.add(name);
+			return this;
+		}
+
+		public Builder addPrefix(@NonNull final String prefix) {
+			final int node = insert(prefix);
+			mFlags[node] |= FLAG_PREFIX;
+			mHasPrefixes = true;
+			return this;
+		}
+
+		public Builder addManufacturerId(final int companyId) {
+			if (companyId < 0 || companyId > 0xFFFF)
+				throw new IllegalArgumentException("Company ID must be a 16-bit value");
+			if ((mManufacturerIds[companyId >>> 6] & (1L << companyId)) != 0)
+				return this;
+			mManufacturerIds[companyId >>> 6] |= 1L << companyId;
+			mManufacturerIdList = Arrays.copyOf(mManufacturerIdList, mManufacturerIdList.length + 1);
+			mManufacturerIdList[mManufacturerIdList.length - 1] = companyId;
+			return this;
+		}
+
+		@NonNull
+		public DevicePatternMatcher build() {
+			// Convert the 256-wide child tables into sorted edge lists
+			int edges = 0;
+			for (int i = 0; i < mNodes * 256; i++) {
+				if (mChildren[i] != 0)
+					edges++;
+			}
+			final int[] edgeStart = new int[mNodes + 1];
+			final byte[] labels = new byte[edges];
+			final int[] targets = new int[edges];
+			int edge = 0;
+			for (int node = 0; node < mNodes; node++) {
+				edgeStart[node] = edge;
+				// Labels are sorted as signed bytes, the same way they are searched
+				for (int b = Byte.MIN_VALUE; b <= Byte.MAX_VALUE; b++) {
+					final int child = mChildren[node * 256 + (b & 0xFF)];
+					if (child != 0) {
+						labels[edge] = (byte) b;
+						targets[edge++] = child;
+					}
+				}
+			}
+			edgeStart[mNodes] = edge;
+			return new DevicePatternMatcher(Arrays.copyOf(mFlags, mNodes), edgeStart, labels, targets,
+					mManufacturerIds.clone(), mHasPrefixes, new ArrayList<>(mExactNames), mManufacturerIdList.clone());
+		}
+
+		private int insert(final String pattern) {
+			int node = 0;
+			for (final byte b : pattern.getBytes(UTF_8)) {
+				final int slot = node * 256 + (b & 0xFF);
+				if (mChildren[slot] == 0) {
+					if (mNodes == mFlags.length) {
+						mFlags = Arrays.copyOf(mFlags, mNodes * 2);
+						mChildren = Arrays.copyOf(mChildren, mNodes * 2 * 256);
+					}
+					mChildren[slot] = mNodes++;
+				}
+				node = mChildren[slot];
+			}
+			return node;
+		}
+	}
+
+	private DevicePatternMatcher(final byte[] flags, final int[] edgeStart, final byte[] labels,
+								 final int[] targets, final long[] manufacturerIds, final boolean hasPrefixes,
+								 final List<String> exactNames, final int[] manufacturerIdList) {
+		mFlags = flags;
+		mEdgeStart = edgeStart;
+		mLabels = labels;
+		mTargets = targets;
+		mManufacturerIds = manufacturerIds;
+		mHasPrefixes = hasPrefixes;
+		mHasManufacturerIds = manufacturerIdList.length > 0;
+		mExactNames = Collections.unmodifiableList(exactNames);
+		mManufacturerIdList = manufacturerIdList;
+	}
+
+	/**
+	 * Returns whether the name, given as UTF-8 bytes, matches any name or prefix pattern.
+	 *
+	 * @param data   the array containing the name
+	 * @param offset the offset of the name
+	 * @param length the length of the name in bytes
+	 */
+	public boolean matchesName(@NonNull final byte[] data, final int offset, final int length) {
+		int node = 0;
+		for (int i = 0; i < length; i++) {
+			if ((mFlags[node] & FLAG_PREFIX) != 0)
+				return true;
+			node = child(node, data[offset + i]);
+			if (node == -1)
+				return false;
+		}
+		return mFlags[node] != 0;
+	}
+
+	/**
+	 * Returns whether the company ID matches any manufacturer pattern.
+	 */
+	public boolean matchesManufacturerId(final int companyId) {
+		return companyId >= 0 && (mManufacturerIds[companyId >>> 6] & (1L << companyId)) != 0;
+	}
+
+	/**
+	 * Returns whether the parsed packet matches any of the patterns.
+	 */
+	public boolean matches(@NonNull final AdvertisingData data) {
+		final byte[] bytes = data.getBytes();
+		if (data.hasName() && matchesName(bytes, data.getNameOffset(), data.getNameLength()))
+			return true;
+		return mHasManufacturerIds && matchesManufacturerId(data.getManufacturerId());
+	}
+
+	/**
+	 * Returns whether there are prefix patterns, which can't be expressed as scan filters.
+	 */
+	public boolean hasPrefixes() {
+		return mHasPrefixes;
+	}
+
+	/**
+	 * Returns names of the exact name patterns.
+	 */
+	@NonNull
+	public List<String> getExactNames() {
+		return mExactNames;
+	}
+
+	/**
+	 * Returns company IDs of the manufacturer patterns.
+	 */
+	@NonNull
+	public int[] getManufacturerIds() {
+		return mManufacturerIdList.clone();
+	}
+
+	private int child(final int node, final byte label) {
+		int low = mEdgeStart[node];
+		int high = mEdgeStart[node + 1] - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final byte l = mLabels[mid];
+			if (l < label)
+				low = mid + 1;
+			else if (l > label)
+				high = mid - 1;
+			else
+				return mTargets[mid];
+		}
+		return -1;
+	}
+}
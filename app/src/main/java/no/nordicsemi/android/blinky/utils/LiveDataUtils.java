@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Observer;
+import android.support.annotation.NonNull;
+
+public class LiveDataUtils {
+
+	/**
+	 * Creates a LiveData that emits a value from the source only if it is different from
+	 * the previously emitted one, compared using {@link Object#equals(Object)}.
+	 *
+	 * @param source the source LiveData
+	 * @return the new LiveData
+	 */
+	@NonNull
+	public static <T> LiveData<T> distinctUntilChanged(@NonNull final LiveData<T> source) {
+		final MediatorLiveData<T> result = new MediatorLiveData<>();
+		result.addSource(source, new Observer<T>() {
+			private boolean mFirstTime = true;
+
+			@Override
+			public void onChanged(final T value) {
+				final T previous = result.getValue();
+				if (mFirstTime || (previous == null && value != null)
+						|| (previous != null && !previous.equals(value))) {
+					mFirstTime = false;
+					result.setValue(value);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Creates a LiveData that never emits a value.
+	 */
+	@NonNull
+	public static <T> LiveData<T> empty() {
+		return new MutableLiveData<>();
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.utils;
+
+import android.support.annotation.NonNull;
+
+public class MacAddress {
+	/** A value that can never be a valid 48-bit address. */
+	public static final long INVALID = -1L;
+
+	/**
+	 * Packs a Bluetooth address in the "AA:BB:CC:DD:EE:FF" form into the lower 48 bits of a long.
+	 * The conversion does not allocate, so it may be used on every received packet.
+	 *
+	 * @param address the address as returned by {@link android.bluetooth.BluetoothDevice#getAddress()}
+	 * @return the packed address, or {@link #INVALID} if the address is malformed
+	 */
+	public static long toLong(final String address) {
+		if (address == null || address.length() != 17)
+			return INVALID;
+
+		long value = 0;
+		for (int i = 0; i < 17; i++) {
+			final char c = address.charAt(i);
+			if (i % 3 == 2) {
+				if (c != ':')
+					return INVALID;
+				continue;
+			}
+			final int digit = Character.digit(c, 16);
+			if (digit < 0)
+				return INVALID;
+			value = (value << 4) | digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Converts the packed address back to the "AA:BB:CC:DD:EE:FF" form.
+	 *
+	 * @param value the address packed with {@link #toLong(String)}
+	 * @return the address as a String
+	 */
+	@NonNull
+	public static String toString(final long value) {
+		final char[] chars = new char[17];
+		for (int i = 0, shift = 40; i < 6; i++, shift -= 8) {
+			final int octet = (int) (value >>> shift) & 0xFF;
+			chars[i * 3] = Character.toUpperCase(Character.forDigit(octet >> 4, 16));
+			chars[i * 3 + 1] = Character.toUpperCase(Character.forDigit(octet & 0x0F, 16));
+			if (i < 5)
+				chars[i * 3 + 2] = ':';
+		}
+		return new String(chars);
+	}
+}
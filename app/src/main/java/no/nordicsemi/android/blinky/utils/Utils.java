@@ -131,6 +131,10 @@ public class Utils {
 		preferences.edit().putBoolean(PREFS_PERMISSION_REQUESTED, true).apply();
 	}
 
+	public static boolean isLollipopOrAbove() {
+		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+	}
+
 	public static boolean isMarshmallowOrAbove() {
 		return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
 	}
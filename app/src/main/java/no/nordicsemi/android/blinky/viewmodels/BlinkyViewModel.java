@@ -33,174 +33,144 @@ package no.nordicsemi.android.blinky.viewmodels;
 import android.app.Application;
 import android.arch.lifecycle.AndroidViewModel;
 import android.arch.lifecycle.LiveData;
-import android.arch.lifecycle.MutableLiveData;
-import android.arch.lifecycle.ViewModel;
-import android.arch.lifecycle.ViewModelProvider;
 import android.bluetooth.BluetoothDevice;
-import android.content.res.Resources;
-import android.nfc.Tag;
+import android.content.ComponentName;
+import android.content.ServiceConnection;
+import android.os.IBinder;
 import android.support.annotation.NonNull;
-import android.util.Log;
 
-import no.nordicsemi.android.blinky.R;
 import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
-import no.nordicsemi.android.blinky.profile.BlinkyManager;
-import no.nordicsemi.android.blinky.profile.BlinkyManagerCallbacks;
-import no.nordicsemi.android.log.ILogSession;
-import no.nordicsemi.android.log.LogSession;
-import no.nordicsemi.android.log.Logger;
-
-public class BlinkyViewModel extends AndroidViewModel implements BlinkyManagerCallbacks {
+import no.nordicsemi.android.blinky.profile.ThermostatCommand;
+import no.nordicsemi.android.blinky.profile.ThermostatConnection;
+import no.nordicsemi.android.blinky.profile.ThermostatFleet;
+import no.nordicsemi.android.blinky.profile.ThermostatService;
+import no.nordicsemi.android.blinky.profile.ThermostatState;
+import no.nordicsemi.android.blinky.utils.LiveDataUtils;
+
+/**
+ * The view model of the control screen. The connection itself is owned by {@link ThermostatFleet}
+ * and hosted by {@link ThermostatService}, so it stays open when the screen is closed.
+ * One of the connect methods must be called before any of the getters. If the connection
+ * was refused, the getters return LiveData that never emit and commands are ignored.
+ */
+public class BlinkyViewModel extends AndroidViewModel {
 	private  final  String TAG="BlinkyViewModel";
-	private final BlinkyManager mBlinkyManager;
-
-	// Connection states Connecting, Connected, Disconnecting, Disconnected etc.
-	private final MutableLiveData<String> mConnectionState = new MutableLiveData<>();
-
-	// Flag to determine if the device is connected
-	private final MutableLiveData<Boolean> mIsConnected = new MutableLiveData<>();
-
-	// Flag to determine if the device is ready
-	private final MutableLiveData<Void> mOnDeviceReady = new MutableLiveData<>();
-	// Flag that holds the on off state of the pump. On is turn on, Off is turn off
-	private final MutableLiveData<Boolean> mPUMPState = new MutableLiveData<>();
-	// Flag that holds the on off state of the pump. On is turn on, Off is turn off
-	private final MutableLiveData<Boolean> mSLOWState = new MutableLiveData<>();
-	// Flag that holds the on off state of the pump. On is turn on, Off is turn off
-	private final MutableLiveData<Boolean> mFASTState = new MutableLiveData<>();
-	// Flag that holds the on off state of the pump. On is turn on, Off is turn off
-	private final MutableLiveData<Boolean> mPowerState = new MutableLiveData<>();
+	private final ThermostatFleet mFleet;
+	private ThermostatConnection mConnection;
+	private boolean mServiceBound;
 
 	public LiveData<Void> isDeviceReady() {
-		return mOnDeviceReady;
+		return mConnection != null ? mConnection.isDeviceReady() : LiveDataUtils.empty();
 	}
 
 	public LiveData<String> getConnectionState() {
-		return mConnectionState;
+		return mConnection != null ? mConnection.getConnectionState() : LiveDataUtils.empty();
 	}
 
 	public LiveData<Boolean> isConnected() {
-		return mIsConnected;
+		return mConnection != null ? mConnection.isConnected() : LiveDataUtils.empty();
+	}
+
+	public LiveData<String> getError() {
+		return mConnection != null ? mConnection.getError() : LiveDataUtils.empty();
+	}
+
+	public LiveData<ThermostatState> getThermostatState() {
+		return mConnection != null ? mConnection.getThermostatState() : LiveDataUtils.empty();
 	}
 
 	public LiveData<Boolean> getSLOWState() {
-		return mSLOWState;
+		return mConnection != null ? mConnection.getSLOWState() : LiveDataUtils.empty();
 	}
 
 	public LiveData<Boolean> getFASTState() {
-		return mFASTState;
+		return mConnection != null ? mConnection.getFASTState() : LiveDataUtils.empty();
 	}
 
 	public LiveData<Boolean> getPUMPState() {
-		return mPUMPState;
+		return mConnection != null ? mConnection.getPUMPState() : LiveDataUtils.empty();
 	}
 
 	public LiveData<Boolean> getPowerState() {
-		return mPowerState;
+		return mConnection != null ? mConnection.getPowerState() : LiveDataUtils.empty();
 	}
 
 	public BlinkyViewModel(@NonNull final Application application) {
 		super(application);
-
-		// Initialize the manager
-		mBlinkyManager = new BlinkyManager(getApplication());
-		mBlinkyManager.setGattCallbacks(this);
+		mFleet = ThermostatFleet.getInstance(application);
 	}
 
 	/**
-	 * Connect to peripheral
+	 * Connect to peripheral, or attach to the existing connection if the device is already connected.
+	 *
+	 * @return false if the connection was refused, because all connections are in use
 	 */
-	public void connect(final ExtendedBluetoothDevice device) {
-		final LogSession logSession = Logger.newSession(getApplication(), null, device.getAddress(), device.getName());
-		mBlinkyManager.setLogger(logSession);
-		mBlinkyManager.connect(device.getDevice());
+	public boolean connect(final ExtendedBluetoothDevice device) {
+		return connect(device.getDevice(), device.getName(), false);
 	}
 
 	/**
-	 * Disconnect from peripheral
+	 * Connect to peripheral by its address, without scanning.
+	 *
+	 * @param device      the device, for example obtained with {@link android.bluetooth.BluetoothAdapter#getRemoteDevice(String)}
+	 * @param name        the last known device name
+	 * @param autoConnect true to wait until the device is in range
+	 * @return false if the connection was refused, because all connections are in use
 	 */
-	private void disconnect() {
-		mBlinkyManager.disconnect();
+	public boolean connect(final BluetoothDevice device, final String name, final boolean autoConnect) {
+		// The view model survives configuration changes, the connection is already acquired then
+		if (mConnection != null)
+			return true;
+		mConnection = mFleet.acquire(device, name, autoConnect);
+		if (mConnection == null)
+			return false;
+		// Keep the service bound while the screen exists, so the process stays in foreground
+		mServiceBound = ThermostatService.bind(getApplication(), mServiceConnection);
+		return true;
 	}
 
+	/**
+	 * Sets whether the control screen is visible. This controls the connection priority.
+	 */
+	public void setForeground(final boolean foreground) {
+		if (mConnection != null)
+			mConnection.getManager().setForeground(foreground);
+	}
 
 	/*
 	 *	send cmd to device for pump turn on or off
 	 */
 	public void togglePump(final boolean onOff) {
-		int icmd =0;
-		Resources res = getApplication().getResources();
-		int b=R.integer.start_fastturn;
-		Log.v(TAG,"b="+b);
-		if (onOff==true)	//send turn on cmd to cooler
-		{
-			icmd = res.getInteger(R.integer.start_pump);
-			Log.v(TAG,"ipcmd="+icmd);
-			Log.v(TAG,"cmd="+onOff);
-		}
-		else				// send turn of to cooler
-		{
-			icmd = res.getInteger(R.integer.stop_pump);
-			Log.v(TAG,"ipcmd="+icmd);
-			Log.v(TAG,"cmd="+onOff);
-		}
 		// send cmd via BLE to device
-		mBlinkyManager.sendCMDtoThermostat(icmd);
+		send(onOff ? ThermostatCommand.START_PUMP : ThermostatCommand.STOP_PUMP);
 	}
 	/*
 	 *	send cmd to device for Fast turn on or off
 	 */
 	public void toggleFast(final boolean onOff) {
-		int icmd =0;
-		Resources res = getApplication().getResources();
-
-		if (onOff==true)	//send turn on cmd to cooler
-		{
-			icmd = res.getInteger(R.integer.start_fastturn);
-			Log.v(TAG,"ipcmd="+icmd);
-			Log.v(TAG,"cmd="+onOff);
-		}
-		else				// send turn of to cooler
-		{
-			icmd = res.getInteger(R.integer.stop_fastturn);
-			Log.v(TAG,"ipcmd="+icmd);
-			Log.v(TAG,"cmd="+onOff);
-		}
 		// send cmd via BLE to device
-		mBlinkyManager.sendCMDtoThermostat(icmd);
-		Log.v(TAG,"fast trigger");
+		send(onOff ? ThermostatCommand.START_FAST_TURN : ThermostatCommand.STOP_FAST_TURN);
 	}
 	/*
 	 *	send cmd to device for Slow turn on or off
 	 */
 	public void toggleSlow(final boolean onOff) {
-		int icmd =0;
-		Resources res = getApplication().getResources();
-
-		if (onOff==true)	//send turn on cmd to cooler
-		{
-			icmd = res.getInteger(R.integer.start_slowturn);
-			Log.v(TAG,"ipcmd="+icmd);
-			Log.v(TAG,"cmd="+onOff);
-		}
-		else				// send turn of to cooler
-		{
-			icmd = res.getInteger(R.integer.stop_slowturn);
-			Log.v(TAG,"ipcmd="+icmd);
-			Log.v(TAG,"cmd="+onOff);
-		}
 		// send cmd via BLE to device
-		mBlinkyManager.sendCMDtoThermostat(icmd);
+		send(onOff ? ThermostatCommand.START_SLOW_TURN : ThermostatCommand.STOP_SLOW_TURN);
 	}
 	/*
 	 *	send cmd to turn off device totally
 	 */
 	public void clickonPowerBut()
 	{
-		int icmd = getApplication().getResources().getInteger(R.integer.turnofdevice);
 		// send cmd via BLE to device
-		mBlinkyManager.sendCMDtoThermostat(icmd);
+		send(ThermostatCommand.TURN_OFF_DEVICE);
+	}
+	private void send(final ThermostatCommand command) {
+		if (mConnection != null)
+			mConnection.send(command);
 	}
+
 	/*
 	 *	check the bit is set
 	 *	@param: n show the number of bit ro test
@@ -218,159 +188,25 @@ public class BlinkyViewModel extends AndroidViewModel implements BlinkyManagerCa
 	@Override
 	protected void onCleared() {
 		super.onCleared();
-		if (mBlinkyManager.isConnected()) {
-			disconnect();
-		}
-	}
-
-	@Override
-	public void onDataReceived(final boolean state) {
-
-	}
-
-	@Override
-	public void onDataSent(final boolean state) {
-
-	}
-
-	@Override
-	public void onDeviceConnecting(final BluetoothDevice device) {
-		mConnectionState.postValue(getApplication().getString(R.string.state_connecting));
-	}
-
-	@Override
-	public void onDeviceConnected(final BluetoothDevice device) {
-		mIsConnected.postValue(true);
-		mConnectionState.postValue(getApplication().getString(R.string.state_discovering_services));
-	}
-
-	@Override
-	public void onDeviceDisconnecting(final BluetoothDevice device) {
-		mIsConnected.postValue(false);
-	}
-
-	@Override
-	public void onDeviceDisconnected(final BluetoothDevice device) {
-		mIsConnected.postValue(false);
-	}
-
-	@Override
-	public void onLinklossOccur(final BluetoothDevice device) {
-		mIsConnected.postValue(false);
-	}
-
-	@Override
-	public void onServicesDiscovered(final BluetoothDevice device, final boolean optionalServicesFound) {
-		mConnectionState.postValue(getApplication().getString(R.string.state_initializing));
-	}
-
-	@Override
-	public void onDeviceReady(final BluetoothDevice device) {
-		mConnectionState.postValue(getApplication().getString(R.string.state_discovering_services_completed, device.getName()));
-		mOnDeviceReady.postValue(null);
-	}
-
-	@Override
-	public boolean shouldEnableBatteryLevelNotifications(final BluetoothDevice device) {
-		// Blinky doesn't have Battery Service
-		return false;
-	}
-
-	@Override
-	public void onBatteryValueReceived(final BluetoothDevice device, final int value) {
-		// Blinky doesn't have Battery Service
-	}
-
-	@Override
-	public void onBondingRequired(final BluetoothDevice device) {
-		// Blinky does not require bonding
-	}
-
-	@Override
-	public void onBonded(final BluetoothDevice device) {
-		// Blinky does not require bonding
-	}
-
-	@Override
-	public void onError(final BluetoothDevice device, final String message, final int errorCode) {
-		// TODO implement
-	}
-
-	@Override
-	public void onDeviceNotSupported(final BluetoothDevice device) {
-		// TODO implement
-	}
-
-	/*
-	 *   This function handle onwritecharterictic callback to update view
-	 *   if comand of turn on fast  send then view of slow should turn of and vice versa
-	 *   @para: data: data of last write to FF03 characteristic
-	 */
-	@Override
-	public void onHandleCMDtoFF03(int data)
-	{
-		// if cmd to turn on fast turn is received then turn of slow
-		if (data==getApplication().getResources().getInteger(R.integer.start_fastturn))
-		{
-			mSLOWState.postValue(false);
-			mPowerState.postValue(true);
-		}
-		// if cmd to turn on slow turn is received then turn of high
-		if (data==getApplication().getResources().getInteger(R.integer.start_slowturn))
-		{
-			mFASTState.postValue(false);
-			mPowerState.postValue(true);
-		}
-		// if cmd to turn on slow turn is received then turn of high
-		if (data==getApplication().getResources().getInteger(R.integer.start_pump))
-		{
-			mPowerState.postValue(true);
+		// The connection is kept open by the fleet, so reopening the screen does not reconnect
+		if (mConnection != null) {
+			mFleet.release(mConnection);
 		}
-		// if cmd to turn on slow turn is received then turn of high
-		if (data==getApplication().getResources().getInteger(R.integer.turnofdevice))
-		{
-			// update livedata (turning of all pump turn icon.
-			mFASTState.postValue(false);
-			mSLOWState.postValue(false);
-			mPUMPState.postValue(false);
-			mPowerState.postValue(false);
+		if (mServiceBound) {
+			getApplication().unbindService(mServiceConnection);
+			mServiceBound = false;
 		}
 	}
-	/*
-	 *	This Function update UI according to status sending from peripheral
-	 *	@param: status according to SRS it will update UI.
-	 */
-	@Override
-	public void onHandleGetStatus(int status)
-	{
-		Log.v(TAG,"status"+status+isBitSet(status,0)+isBitSet(status,1)+isBitSet(status,7));
-		if (isBitSet(status,0)) //fast turn is on
-		{mFASTState.postValue(true);}
-		else
-		{mFASTState.postValue(false);}
-
-		if (isBitSet(status,1)) //slow turn is on
-		{mSLOWState.postValue(true);}
-		else
-		{mSLOWState.postValue(false);}
-
-		if (isBitSet(status,2)) //Pump turn is on
-		{mPUMPState.postValue(true);}
-		else
-		{mPUMPState.postValue(false);}
 
-		if (isBitSet(status,3)) //temperature turn is on
-		{}
-		else
-		{}
-		if (isBitSet(status,4)) //timeCtr turn is on
-		{}
-		else
-		{}
-		if (isBitSet(status,7)) //power turn is on
-		{mPowerState.postValue(true);}
-		else
-		{mPowerState.postValue(false);}
+	private final ServiceConnection mServiceConnection = new ServiceConnection() {
+		@Override
+		public void onServiceConnected(final ComponentName name, final IBinder service) {
+			// The binding only keeps the service alive, the connection is taken from the fleet
+		}
 
-	}
+		@Override
+		public void onServiceDisconnected(final ComponentName name) {
+			// do nothing
+		}
+	};
 }
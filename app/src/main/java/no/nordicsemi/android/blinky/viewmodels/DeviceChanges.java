@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+import android.support.v7.util.ListUpdateCallback;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A set of changes made to the devices list between two snapshots. New devices are always appended
+ * to the list, so insertions form a single range at its end. Updated devices are kept in bit sets,
+ * one per {@link Payload}, and reported as ranges of consecutive positions with that payload. Removed devices are kept by their positions
+ * in the list as last dispatched and are reported first, so the remaining positions match the
+ * current list.
+ * <p>
+ * When the list is sorted, devices may be inserted and moved anywhere. In that case changes are
+ * recorded as a log of operations instead, replayed in the same order. A log longer than
+ * {@link #MAX_OPERATIONS} is replaced by a reset.
+ */
+public class DeviceChanges {
+	/**
+	 * Payloads passed with change notifications, telling which part of the row has changed.
+	 */
+	public enum Payload {
+		/** The signal level has changed. */
+		SIGNAL,
+		/** The device name has changed. */
+		NAME
+	}
+
+	private final static int MAX_OPERATIONS = 512;
+	private final static int OP_INSERTED = 0;
+	private final static int OP_REMOVED = 1;
+	private final static int OP_MOVED = 2;
+	private final static int OP_CHANGED = 3;
+	private final static Payload[] PAYLOADS = Payload.values();
+
+	private final BitSet mSignalChanged = new BitSet();
+	private final BitSet mNameChanged = new BitSet();
+	private final BitSet mRemoved = new BitSet();
+	private final BitSet mScratch = new BitSet();
+	private int mInsertedStart;
+	private int mInsertedCount;
+	private boolean mReset;
+	/** Operations on the sorted list, each stored as 3 ints: type and two arguments. */
+	private int[] mOperations = new int[48];
+	private int mOperationCount;
+
+	/* package */ void inserted(final int index) {
+		if (mInsertedCount == 0)
+			mInsertedStart = index;
+		mInsertedCount++;
+	}
+
+	/* package */ void signalChanged(final int index) {
+		mSignalChanged.set(index);
+	}
+
+	/* package */ void nameChanged(final int index) {
+		mNameChanged.set(index);
+	}
+
+	/**
+	 * Records removal of devices from the current list.
+	 *
+	 * @param indexes indexes of the removed devices in the list before removal, sorted ascending
+	 * @param count   number of indexes
+	 */
+	/* package */ void removed(final int[] indexes, final int count) {
+		if (mReset || count == 0)
+			return;
+
+		// Map the indexes to positions known to the observer. Start from the last one,
+		// so that positions removed in this call do not affect the ones below
+		int removedBeforeInsert = 0;
+		for (int i = count - 1; i >= 0; i--) {
+			final int index = indexes[i];
+			if (mInsertedCount > 0 && index >= mInsertedStart) {
+				// The observer has never seen this device
+				mInsertedCount--;
+				continue;
+			}
+			int position = index;
+			for (int b = mRemoved.nextSetBit(0); b >= 0 && b <= position; b = mRemoved.nextSetBit(b + 1))
+				position++;
+			mRemoved.set(position);
+			removedBeforeInsert++;
+		}
+		mInsertedStart -= removedBeforeInsert;
+
+		shift(mSignalChanged, indexes, count);
+		shift(mNameChanged, indexes, count);
+	}
+
+	/**
+	 * Shifts changed indexes down by the number of removed devices below them.
+	 */
+	private void shift(final BitSet changed, final int[] indexes, final int count) {
+		mScratch.clear();
+		int shift = 0;
+		for (int c = changed.nextSetBit(0); c >= 0; c = changed.nextSetBit(c + 1)) {
+			while (shift < count && indexes[shift] < c)
+				shift++;
+			if (shift < count && indexes[shift] == c)
+				continue;
+			mScratch.set(c - shift);
+		}
+		changed.clear();
+		changed.or(mScratch);
+	}
+
+	/* package */ void loggedInserted(final int position) {
+		log(OP_INSERTED, position, 0);
+	}
+
+	/* package */ void loggedRemoved(final int position) {
+		log(OP_REMOVED, position, 0);
+	}
+
+	/* package */ void loggedMoved(final int from, final int to) {
+		if (from != to)
+			log(OP_MOVED, from, to);
+	}
+
+	/* package */ void loggedChanged(final int position, @NonNull final Payload payload) {
+		// Skip repeated changes of the same row
+		final int last = (mOperationCount - 1) * 3;
+		if (mOperationCount > 0 && mOperations[last] == OP_CHANGED
+				&& mOperations[last + 1] == position && mOperations[last + 2] == payload.ordinal())
+			return;
+		log(OP_CHANGED, position, payload.ordinal());
+	}
+
+	private void log(final int type, final int a, final int b) {
+		if (mReset)
+			return;
+		if (mOperationCount == MAX_OPERATIONS) {
+			// Rebinding everything is cheaper than replaying so many operations
+			reset();
+			return;
+		}
+		final int offset = mOperationCount * 3;
+		if (offset + 3 > mOperations.length)
+			mOperations = Arrays.copyOf(mOperations, mOperations.length * 2);
+		mOperations[offset] = type;
+		mOperations[offset + 1] = a;
+		mOperations[offset + 2] = b;
+		mOperationCount++;
+	}
+
+	/* package */ void reset() {
+		clear();
+		mReset = true;
+	}
+
+	/* package */ void clear() {
+		mSignalChanged.clear();
+		mNameChanged.clear();
+		mRemoved.clear();
+		mOperationCount = 0;
+		mInsertedCount = 0;
+		mReset = false;
+	}
+
+	/**
+	 * Returns true if the whole list has changed and has to be reloaded.
+	 */
+	public boolean isReset() {
+		return mReset;
+	}
+
+	/**
+	 * Returns whether there are no changes in this set.
+	 */
+	public boolean isEmpty() {
+		return !mReset && mInsertedCount == 0 && mSignalChanged.isEmpty() && mNameChanged.isEmpty() && mRemoved.isEmpty()
+				&& mOperationCount == 0;
+	}
+
+	/**
+	 * Dispatches the changes as ranges to the given callback. Devices that were both inserted
+	 * and updated in the same frame are reported only as inserted. Removals are reported first,
+	 * from the end of the list. Each change is reported with a {@link Payload}; a device whose
+	 * signal and name have both changed is reported twice, once with each payload.
+	 *
+	 * @param callback the callback, usually forwarding to the adapter notify methods
+	 */
+	public void dispatchUpdatesTo(@NonNull final ListUpdateCallback callback) {
+		int last = mRemoved.length() - 1;
+		while (last >= 0) {
+			final int first = mRemoved.previousClearBit(last) + 1;
+			callback.onRemoved(first, last - first + 1);
+			last = first > 0 ? mRemoved.previousSetBit(first - 1) : -1;
+		}
+
+		final int limit = mInsertedCount > 0 ? mInsertedStart : Integer.MAX_VALUE;
+		dispatchChanges(mSignalChanged, limit, Payload.SIGNAL, callback);
+		dispatchChanges(mNameChanged, limit, Payload.NAME, callback);
+		if (mInsertedCount > 0)
+			callback.onInserted(mInsertedStart, mInsertedCount);
+
+		for (int i = 0; i < mOperationCount * 3; i += 3) {
+			final int a = mOperations[i + 1];
+			final int b = mOperations[i + 2];
+			switch (mOperations[i]) {
+				case OP_INSERTED:
+					callback.onInserted(a, 1);
+					break;
+				case OP_REMOVED:
+					callback.onRemoved(a, 1);
+					break;
+				case OP_MOVED:
+					callback.onMoved(a, b);
+					break;
+				case OP_CHANGED:
+					callback.onChanged(a, 1, PAYLOADS[b]);
+					break;
+			}
+		}
+	}
+
+	private static void dispatchChanges(final BitSet changed, final int limit, final Payload payload,
+										@NonNull final ListUpdateCallback callback) {
+		int start = changed.nextSetBit(0);
+		while (start >= 0 && start < limit) {
+			final int end = Math.min(changed.nextClearBit(start), limit);
+			callback.onChanged(start, end - start, payload);
+			start = changed.nextSetBit(end);
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+
+/**
+ * The write path of the device list. Devices are kept in a {@link DeviceRegistry} and presented
+ * through a {@link SortedDeviceView}. Every change is recorded in the {@link DeviceChanges} of
+ * the next snapshot, either as ranges in {@link SortOrder#DISCOVERY} order or as a log of
+ * operations when sorted, and snapshots are exchanged with the observer using a
+ * {@link SnapshotBuffer}.
+ * <p>
+ * All methods but {@link #takeSnapshot()} must be called by the single writer.
+ */
+/* package */ class DeviceList {
+	private final DeviceRegistry mDevices = new DeviceRegistry();
+	private final SortedDeviceView mSortedDevices = new SortedDeviceView(mDevices);
+	private final SnapshotBuffer mSnapshots = new SnapshotBuffer();
+	private int[] mPositions = new int[16];
+
+	/**
+	 * Returns the registry index of the device with given address, or -1 if not found.
+	 */
+	/* package */ int indexOf(final long key) {
+		return mDevices.indexOf(key);
+	}
+
+	/* package */ ExtendedBluetoothDevice get(final int index) {
+		return mDevices.get(index);
+	}
+
+	/* package */ int size() {
+		return mDevices.size();
+	}
+
+	/* package */ SortOrder getSortOrder() {
+		return mSortedDevices.getSortOrder();
+	}
+
+	/**
+	 * Sorts the devices in the given order, or again in the current one if sort keys of many
+	 * devices have changed at once. Observers get a reset.
+	 */
+	/* package */ void setSortOrder(@NonNull final SortOrder order) {
+		mSortedDevices.setSortOrder(order);
+		mSnapshots.changes().reset();
+	}
+
+	/**
+	 * Adds a new device.
+	 *
+	 * @param key    the device address packed into a long
+	 * @param device the device
+	 */
+	/* package */ void add(final long key, @NonNull final ExtendedBluetoothDevice device) {
+		final int index = mDevices.add(key, device);
+		final int position = mSortedDevices.inserted(index);
+		if (mSortedDevices.getSortOrder() == SortOrder.DISCOVERY)
+			mSnapshots.changes().inserted(index);
+		else
+			mSnapshots.changes().loggedInserted(position);
+	}
+
+	/**
+	 * Repositions the device after it has been updated and records the change. The sort key may
+	 * have changed even if the row has not, e.g. the average RSSI.
+	 *
+	 * @param index        the registry index of the device
+	 * @param levelChanged whether the signal level has changed
+	 * @param nameChanged  whether the name has changed
+	 */
+	/* package */ void changed(final int index, final boolean levelChanged, final boolean nameChanged) {
+		if (mSortedDevices.getSortOrder() == SortOrder.DISCOVERY) {
+			if (levelChanged)
+				mSnapshots.changes().signalChanged(index);
+			if (nameChanged)
+				mSnapshots.changes().nameChanged(index);
+			return;
+		}
+
+		final int position = mSortedDevices.positionOf(index);
+		final int newPosition = mSortedDevices.changed(index);
+		if (!levelChanged && !nameChanged && position == newPosition)
+			return;
+		final DeviceChanges changes = mSnapshots.changes();
+		if (levelChanged)
+			changes.loggedChanged(position, DeviceChanges.Payload.SIGNAL);
+		if (nameChanged)
+			changes.loggedChanged(position, DeviceChanges.Payload.NAME);
+		changes.loggedMoved(position, newPosition);
+	}
+
+	/**
+	 * Removes devices as a single batch.
+	 *
+	 * @param indexes registry indexes of the devices, sorted ascending
+	 * @param count   number of indexes
+	 */
+	/* package */ void removeAll(final int[] indexes, final int count) {
+		if (count == 0)
+			return;
+		if (mSortedDevices.getSortOrder() == SortOrder.DISCOVERY) {
+			mSnapshots.changes().removed(indexes, count);
+		} else {
+			if (mPositions.length < count)
+				mPositions = new int[Math.max(count, mPositions.length * 2)];
+			for (int i = 0; i < count; i++)
+				mPositions[i] = mSortedDevices.positionOf(indexes[i]);
+			Arrays.sort(mPositions, 0, count);
+			// From the end, so that the positions below stay valid
+			final DeviceChanges changes = mSnapshots.changes();
+			for (int i = count - 1; i >= 0; i--)
+				changes.loggedRemoved(mPositions[i]);
+		}
+		mSortedDevices.removeAll(indexes, count);
+		mDevices.removeAll(indexes, count);
+	}
+
+	/**
+	 * Removes all devices. Observers get a reset.
+	 */
+	/* package */ void clear() {
+		mDevices.clear();
+		mSortedDevices.reset();
+		mSnapshots.changes().reset();
+	}
+
+	/**
+	 * Publishes the sorted list, if it has changed since the last publish.
+	 *
+	 * @return the number of published devices, or -1 if nothing has changed
+	 */
+	/* package */ int publish() {
+		return mSnapshots.publish(mSortedDevices) ? mSortedDevices.size() : -1;
+	}
+
+	/**
+	 * Returns the latest published snapshot, see {@link SnapshotBuffer#take()}.
+	 * Called by the observer.
+	 */
+	@NonNull
+	/* package */ DeviceSnapshot takeSnapshot() {
+		return mSnapshots.take();
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+
+/**
+ * The registry keeps discovered devices in the order they were found and an open-addressing
+ * hash index from the device address, packed into a long, to the device position on the list.
+ * Devices are only removed in batches, after which the index is rebuilt.
+ */
+/* package */ class DeviceRegistry {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final List<ExtendedBluetoothDevice> mDevices = new ArrayList<>();
+	private long[] mKeys;
+	private int[] mIndexes;
+	private int mMask;
+
+	/* package */ DeviceRegistry() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Returns the index of the device with given address.
+	 *
+	 * @param key the device address packed using {@link MacAddress#toLong(String)}
+	 * @return the index of the device on the list, or -1 if not found
+	 */
+	/* package */ int indexOf(final long key) {
+		int slot = slotOf(key);
+		long k;
+		while ((k = mKeys[slot]) != MacAddress.INVALID) {
+			if (k == key)
+				return mIndexes[slot];
+			slot = (slot + 1) & mMask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds the device at the end of the list.
+	 *
+	 * @param key    the device address packed using {@link MacAddress#toLong(String)}
+	 * @param device the device to be added
+	 * @return the index of the new device
+	 */
+	/* package */ int add(final long key, @NonNull final ExtendedBluetoothDevice device) {
+		final int index = mDevices.size();
+		mDevices.add(device);
+		// Keep the load factor below 0.5
+		if (mDevices.size() * 2 > mKeys.length)
+			rehash(mKeys.length * 2);
+		else
+			insert(key, index);
+		return index;
+	}
+
+	/**
+	 * Removes devices at given indexes and rebuilds the index. The order of the remaining
+	 * devices is preserved.
+	 *
+	 * @param indexes indexes of devices to be removed, sorted ascending
+	 * @param count   number of indexes
+	 */
+	/* package */ void removeAll(final int[] indexes, final int count) {
+		if (count == 0)
+			return;
+		int write = indexes[0];
+		int next = 0;
+		for (int read = indexes[0]; read < mDevices.size(); read++) {
+			if (next < count && indexes[next] == read) {
+				next++;
+				continue;
+			}
+			mDevices.set(write++, mDevices.get(read));
+		}
+		mDevices.subList(write, mDevices.size()).clear();
+
+		// Shrink the table when most devices are gone
+		int capacity = mKeys.length;
+		while (capacity > INITIAL_CAPACITY && mDevices.size() * 8 < capacity)
+			capacity /= 2;
+		rehash(capacity);
+	}
+
+	/* package */ ExtendedBluetoothDevice get(final int index) {
+		return mDevices.get(index);
+	}
+
+	/* package */ int size() {
+		return mDevices.size();
+	}
+
+	/* package */ void clear() {
+		mDevices.clear();
+		Arrays.fill(mKeys, MacAddress.INVALID);
+	}
+
+	private void insert(final long key, final int index) {
+		int slot = slotOf(key);
+		while (mKeys[slot] != MacAddress.INVALID)
+			slot = (slot + 1) & mMask;
+		mKeys[slot] = key;
+		mIndexes[slot] = index;
+	}
+
+	private void rehash(final int capacity) {
+		allocate(capacity);
+		for (int i = 0; i < mDevices.size(); i++)
+			insert(mDevices.get(i).getAddressKey(), i);
+	}
+
+	private void allocate(final int capacity) {
+		mKeys = new long[capacity];
+		mIndexes = new int[capacity];
+		mMask = capacity - 1;
+		Arrays.fill(mKeys, MacAddress.INVALID);
+	}
+
+	private int slotOf(final long key) {
+		// Mix the bits, as addresses from one vendor share the upper 3 bytes
+		final long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32) & mMask;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.LongSparseArray;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+
+/**
+ * Process-wide repository of devices currently known to the scanner, keyed by address.
+ * Screens pass only the device address to each other and resolve the device here, together
+ * with its latest scan data, instead of parceling it.
+ * <p>
+ * The repository is not persisted. A screen recreated after the process was killed will not
+ * find the device here and should fall back to
+ * {@link android.bluetooth.BluetoothAdapter#getRemoteDevice(String)}.
+ */
+public class DeviceRepository {
+	private static DeviceRepository sInstance;
+
+	private final LongSparseArray<ExtendedBluetoothDevice> mDevices = new LongSparseArray<>();
+
+	/**
+	 * Returns the repository, creating it on the first call.
+	 */
+	@NonNull
+	public static synchronized DeviceRepository getInstance() {
+		if (sInstance == null)
+			sInstance = new DeviceRepository();
+		return sInstance;
+	}
+
+	private DeviceRepository() {
+		// empty private constructor
+	}
+
+	/**
+	 * Returns the device with given address, or null if it's not known.
+	 *
+	 * @param address the device address, e.g. "AA:BB:CC:DD:EE:FF"
+	 */
+	@Nullable
+	public synchronized ExtendedBluetoothDevice get(@Nullable final String address) {
+		if (address == null)
+			return null;
+		final long key = MacAddress.toLong(address);
+		return key != MacAddress.INVALID ? mDevices.get(key) : null;
+	}
+
+	/* package */ synchronized void put(@NonNull final ExtendedBluetoothDevice device) {
+		mDevices.put(device.getAddressKey(), device);
+	}
+
+	/* package */ synchronized void remove(final long key) {
+		mDevices.remove(key);
+	}
+
+	/* package */ synchronized void clear() {
+		mDevices.clear();
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+
+/**
+ * A copy of the device list as it was when published by {@link ScannerLiveData}, together with
+ * the changes leading to it from the previous snapshot taken by the observer. Besides the
+ * devices, the snapshot keeps the name and the signal level of each one, so that a row is bound
+ * with the values that caused its change notification, even if the device has been updated
+ * since.
+ * <p>
+ * A snapshot is not modified while the observer holds it. Once the observer takes a newer one,
+ * the old snapshot is given back to the scanner and reused, so the observer must not keep
+ * references to it.
+ */
+public final class DeviceSnapshot extends AbstractList<ExtendedBluetoothDevice> {
+	private final DeviceChanges mChanges = new DeviceChanges();
+	private ExtendedBluetoothDevice[] mDevices = new ExtendedBluetoothDevice[16];
+	private String[] mNames = new String[16];
+	private int[] mSignalLevels = new int[16];
+	private int mSize;
+	private int mVersion;
+
+	/* package */ DeviceSnapshot() {
+		// empty
+	}
+
+	/**
+	 * Copies the devices from given list.
+	 *
+	 * @param devices the current devices
+	 * @param version the version of this snapshot
+	 */
+	/* package */ void fill(@NonNull final List<ExtendedBluetoothDevice> devices, final int version) {
+		final int size = devices.size();
+		if (mDevices.length < size) {
+			final int capacity = Math.max(size, mDevices.length * 2);
+			mDevices = new ExtendedBluetoothDevice[capacity];
+			mNames = new String[capacity];
+			mSignalLevels = new int[capacity];
+		}
+		for (int i = 0; i < size; i++) {
+			final ExtendedBluetoothDevice device = devices.get(i);
+			mDevices[i] = device;
+			mNames[i] = device.getName();
+			mSignalLevels[i] = device.getSignalLevel();
+		}
+		// Don't hold devices that are gone
+		if (mSize > size) {
+			Arrays.fill(mDevices, size, mSize, null);
+			Arrays.fill(mNames, size, mSize, null);
+		}
+		mSize = size;
+		mVersion = version;
+	}
+
+	@Override
+	public ExtendedBluetoothDevice get(final int position) {
+		if (position < 0 || position >= mSize)
+			throw new IndexOutOfBoundsException("Position: " + position + ", size: " + mSize);
+		return mDevices[position];
+	}
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	/**
+	 * Returns the name of the device at given position when the snapshot was published.
+	 */
+	public String getName(final int position) {
+		return mNames[position];
+	}
+
+	/**
+	 * Returns the signal level of the device at given position when the snapshot was published.
+	 */
+	public int getSignalLevel(final int position) {
+		return mSignalLevels[position];
+	}
+
+	/**
+	 * Returns the version of the snapshot. Each published snapshot has a greater version
+	 * than the previous one.
+	 */
+	public int getVersion() {
+		return mVersion;
+	}
+
+	/**
+	 * Returns changes made to the list since the previous snapshot taken by the observer.
+	 */
+	@NonNull
+	public DeviceChanges getChanges() {
+		return mChanges;
+	}
+}
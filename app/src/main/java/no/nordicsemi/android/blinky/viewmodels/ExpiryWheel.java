@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import java.util.Arrays;
+
+/**
+ * A hashed timing wheel holding device addresses until their deadline. Each slot covers one
+ * tick and keeps the addresses due in that tick in a growable primitive array, so scheduling
+ * does not allocate once the slots have grown.
+ * <p>
+ * Deadlines are not updated when a device is seen again. Instead, when the slot of a device
+ * comes due, its current deadline is checked and the device is either expired or put back
+ * into the slot of the new deadline. This way receiving a packet costs nothing here.
+ */
+/* package */ class ExpiryWheel {
+	/** Returned by {@link DeadlineProvider#getDeadline(long)} for devices no longer tracked. */
+	/* package */ static final long NONE = -1;
+
+	/* package */ interface DeadlineProvider {
+		/**
+		 * Returns the current deadline of the device with given address, or {@link #NONE}.
+		 */
+		long getDeadline(final long key);
+	}
+
+	private final long mTick;
+	private final long[][] mSlots;
+	private final int[] mSizes;
+	private final int mMask;
+	/** The last tick that has been processed. */
+	private long mCurrentTick = -1;
+	private int mSize;
+	/** Addresses expired in the last call to {@link #advance(long, DeadlineProvider)}. */
+	private long[] mExpired = new long[16];
+	private int mExpiredCount;
+	/** Devices to be rescheduled after processing the due slots. */
+	private long[] mDeferredKeys = new long[16];
+	private long[] mDeferredDeadlines = new long[16];
+	private int mDeferredCount;
+
+	/**
+	 * Creates the wheel.
+	 *
+	 * @param tick  duration of a tick in milliseconds
+	 * @param slots number of slots, must be a power of 2
+	 */
+	/* package */ ExpiryWheel(final long tick, final int slots) {
+		mTick = tick;
+		mSlots = new long[slots][];
+		mSizes = new int[slots];
+		mMask = slots - 1;
+		for (int i = 0; i < slots; i++)
+			mSlots[i] = new long[4];
+	}
+
+	/* package */ long getTick() {
+		return mTick;
+	}
+
+	/**
+	 * Adds the device to the slot of the given deadline.
+	 *
+	 * @param key      the device address packed into a long
+	 * @param deadline the deadline in milliseconds, in {@link android.os.SystemClock#elapsedRealtime()} time base
+	 */
+	/* package */ void schedule(final long key, final long deadline) {
+		// Deadlines in already processed ticks go to the next one
+		final long tick = Math.max(deadline / mTick, mCurrentTick + 1);
+		final int slot = (int) (tick & mMask);
+		long[] keys = mSlots[slot];
+		if (mSizes[slot] == keys.length)
+			mSlots[slot] = keys = Arrays.copyOf(keys, keys.length * 2);
+		keys[mSizes[slot]++] = key;
+		mSize++;
+	}
+
+	/**
+	 * Processes all ticks up to the given time. Devices whose deadline has passed are removed
+	 * from the wheel and may be obtained using {@link #getExpired(int)}.
+	 *
+	 * @param now      current time, in {@link android.os.SystemClock#elapsedRealtime()} time base
+	 * @param provider provider of the current deadlines
+	 * @return number of expired devices
+	 */
+	/* package */ int advance(final long now, final DeadlineProvider provider) {
+		mExpiredCount = 0;
+		final long nowTick = now / mTick;
+		// Visiting each slot once is enough, even if more time has passed. The first call
+		// visits all slots, as devices may have been scheduled in any of them
+		final long from = mCurrentTick == -1 ? nowTick - mMask : Math.max(mCurrentTick + 1, nowTick - mMask);
+		mCurrentTick = nowTick;
+		for (long tick = from; tick <= nowTick; tick++) {
+			final int slot = (int) (tick & mMask);
+			final long[] keys = mSlots[slot];
+			final int count = mSizes[slot];
+			mSizes[slot] = 0;
+			mSize -= count;
+			for (int i = 0; i < count; i++) {
+				final long key = keys[i];
+				final long deadline = provider.getDeadline(key);
+				if (deadline == NONE)
+					continue;
+				if (deadline <= now) {
+					if (mExpiredCount == mExpired.length)
+						mExpired = Arrays.copyOf(mExpired, mExpiredCount * 2);
+					mExpired[mExpiredCount++] = key;
+				} else {
+					// Devices seen again are put back after the loop, as their new slot
+					// may be the one being processed
+					if (mDeferredCount == mDeferredKeys.length) {
+						mDeferredKeys = Arrays.copyOf(mDeferredKeys, mDeferredCount * 2);
+						mDeferredDeadlines = Arrays.copyOf(mDeferredDeadlines, mDeferredCount * 2);
+					}
+					mDeferredKeys[mDeferredCount] = key;
+					mDeferredDeadlines[mDeferredCount++] = deadline;
+				}
+			}
+		}
+		for (int i = 0; i < mDeferredCount; i++)
+			schedule(mDeferredKeys[i], mDeferredDeadlines[i]);
+		mDeferredCount = 0;
+		return mExpiredCount;
+	}
+
+	/* package */ long getExpired(final int index) {
+		return mExpired[index];
+	}
+
+	/* package */ boolean isEmpty() {
+		return mSize == 0;
+	}
+
+	/* package */ void clear() {
+		Arrays.fill(mSizes, 0);
+		mSize = 0;
+		mCurrentTick = -1;
+	}
+}
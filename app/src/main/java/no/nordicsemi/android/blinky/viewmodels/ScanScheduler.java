@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import no.nordicsemi.android.support.v18.scanner.ScanSettings;
+
+/**
+ * Chooses the scan mode. Scanning starts in low latency mode, so that devices around are found
+ * quickly. When no new device has been found for a while the mode steps down to balanced and
+ * then to low power. A new device brings it back to low latency.
+ * <p>
+ * In low power mode results are also batched, see {@link #getReportDelay()}. Such a scan runs
+ * when the app has been left on the scanner screen with nothing new around, so delivering
+ * results together saves CPU wake-ups at little cost. The delay may be changed, or batching
+ * disabled, with {@link #setReportDelay(long)}.
+ * <p>
+ * Changing the mode requires restarting the scan, which counts against the {@link ScanThrottle}
+ * budget. The mode is changed only if a start is left in reserve afterwards, so that a start
+ * requested by the user is not throttled.
+ */
+/* package */ class ScanScheduler {
+	/** How often the mode should be reconsidered while scanning. */
+	/* package */ static final long CHECK_INTERVAL = 5000; // ms
+	/** Time without new devices after which the balanced mode is used. */
+	private static final long BALANCED_AFTER = 15000; // ms
+	/** Time without new devices after which the low power mode is used. */
+	private static final long LOW_POWER_AFTER = 60000; // ms
+	/** Default delay between batches of results in low power mode. */
+	/* package */ static final long DEFAULT_REPORT_DELAY = 5000; // ms
+	/** Number of starts that must remain in the budget after changing the mode. */
+	private static final int RESERVED_STARTS = 1;
+
+	private final ScanThrottle mThrottle;
+	private int mScanMode = ScanSettings.SCAN_MODE_LOW_LATENCY;
+	private long mLastNewDevice;
+	private long mReportDelay = DEFAULT_REPORT_DELAY;
+
+	/* package */ ScanScheduler(final ScanThrottle throttle) {
+		mThrottle = throttle;
+	}
+
+	/**
+	 * Starts a new scanning session in low latency mode.
+	 */
+	/* package */ void reset(final long now) {
+		mScanMode = ScanSettings.SCAN_MODE_LOW_LATENCY;
+		mLastNewDevice = now;
+	}
+
+	/**
+	 * Returns the mode the scan is or will be started with.
+	 */
+	/* package */ int getScanMode() {
+		return mScanMode;
+	}
+
+	/**
+	 * Sets the delay between batches of results in low power mode.
+	 *
+	 * @param delay the delay in milliseconds, 0 to report results as soon as they are received
+	 */
+	/* package */ void setReportDelay(final long delay) {
+		mReportDelay = delay;
+	}
+
+	/**
+	 * Returns the report delay the scan is or will be started with, 0 if results should be
+	 * reported as soon as they are received.
+	 */
+	/* package */ long getReportDelay() {
+		return mScanMode == ScanSettings.SCAN_MODE_LOW_POWER ? mReportDelay : 0;
+	}
+
+	/* package */ void onNewDevice(final long now) {
+		mLastNewDevice = now;
+	}
+
+	/**
+	 * Returns the time to wait before the scan may be started, or 0 if it may be started now.
+	 */
+	/* package */ long getStartDelay(final long now) {
+		return mThrottle.getDelay(now);
+	}
+
+	/* package */ void onScanStarted(final long now) {
+		mThrottle.onScanStarted(now);
+	}
+
+	/**
+	 * Returns the mode the running scan should be restarted with, or -1 if it should stay
+	 * as it is, either because the mode is right or because the budget does not allow a restart.
+	 */
+	/* package */ int getNewScanMode(final long now) {
+		final long quiet = now - mLastNewDevice;
+		final int mode;
+		if (quiet >= LOW_POWER_AFTER)
+			mode = ScanSettings.SCAN_MODE_LOW_POWER;
+		else if (quiet >= BALANCED_AFTER)
+			mode = ScanSettings.SCAN_MODE_BALANCED;
+		else
+			mode = ScanSettings.SCAN_MODE_LOW_LATENCY;
+
+		if (mode == mScanMode || mThrottle.getRemainingStarts(now) <= RESERVED_STARTS)
+			return -1;
+		mScanMode = mode;
+		return mode;
+	}
+}
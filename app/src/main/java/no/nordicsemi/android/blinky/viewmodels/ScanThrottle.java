@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Tracks scan starts of the whole app. Since Android 7 an app that starts scanning more than
+ * {@link #MAX_STARTS} times within {@link #WINDOW} is not given any results for a while,
+ * without being notified. Starts are therefore recorded here and a new one is allowed only
+ * when it fits in the budget.
+ */
+/* package */ class ScanThrottle {
+	/* package */ static final int MAX_STARTS = 5;
+	/* package */ static final long WINDOW = 30000; // ms
+	/** Extra time added to the window, as the platform uses its own clock. */
+	private static final long MARGIN = 500; // ms
+
+	private static ScanThrottle sInstance;
+
+	/** Times of the last starts, in elapsed realtime, used as a ring buffer. */
+	private final long[] mStarts = new long[MAX_STARTS];
+	private int mNext;
+
+	@NonNull
+	/* package */ static synchronized ScanThrottle getInstance() {
+		if (sInstance == null)
+			sInstance = new ScanThrottle();
+		return sInstance;
+	}
+
+	private ScanThrottle() {
+		// Make all slots available
+		for (int i = 0; i < MAX_STARTS; i++)
+			mStarts[i] = Long.MIN_VALUE / 2;
+	}
+
+	/**
+	 * Returns the number of starts that may be made now without being throttled.
+	 */
+	/* package */ synchronized int getRemainingStarts(final long now) {
+		int remaining = 0;
+		for (final long start : mStarts) {
+			if (now - start >= WINDOW + MARGIN)
+				remaining++;
+		}
+		return remaining;
+	}
+
+	/**
+	 * Returns the time to wait before a scan may be started, or 0 if it may be started now.
+	 */
+	/* package */ synchronized long getDelay(final long now) {
+		// The oldest start is the next one to be overwritten
+		return Math.max(0, mStarts[mNext] + WINDOW + MARGIN - now);
+	}
+
+	/**
+	 * Records a scan start.
+	 */
+	/* package */ synchronized void onScanStarted(final long now) {
+		mStarts[mNext] = now;
+		mNext = (mNext + 1) % MAX_STARTS;
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import no.nordicsemi.android.blinky.utils.Utils;
+
+/**
+ * In-memory copy of the environment the scanner depends on: Location permission, Location mode,
+ * the "Location not required" flag and the Bluetooth adapter state. The values are read once and
+ * then updated by the broadcast receivers in {@link ScannerViewModel}, so the scan callback
+ * can check them on every packet without IPC or disk access.
+ */
+public class ScannerEnvironment {
+	private volatile boolean mLocationPermissionGranted;
+	private volatile boolean mLocationEnabled;
+	private volatile boolean mLocationRequired;
+	private volatile boolean mBluetoothEnabled;
+
+	/* package */ ScannerEnvironment(@NonNull final Context context) {
+		refresh(context);
+	}
+
+	/**
+	 * Reads all values again. This does IPC and disk I/O and must not be called for every packet.
+	 */
+	/* package */ void refresh(@NonNull final Context context) {
+		mLocationPermissionGranted = Utils.isLocationPermissionsGranted(context);
+		mLocationEnabled = Utils.isLocationEnabled(context);
+		mLocationRequired = Utils.isLocationRequired(context);
+		mBluetoothEnabled = Utils.isBleEnabled();
+	}
+
+	/* package */ void setLocationEnabled(final boolean enabled) {
+		mLocationEnabled = enabled;
+	}
+
+	/* package */ void setBluetoothEnabled(final boolean enabled) {
+		mBluetoothEnabled = enabled;
+	}
+
+	/**
+	 * Marks that Location is not required in order to scan. The flag is saved only once,
+	 * following calls return immediately.
+	 */
+	/* package */ void markLocationNotRequired(@NonNull final Context context) {
+		if (!mLocationRequired)
+			return;
+		mLocationRequired = false;
+		Utils.markLocationNotRequired(context);
+	}
+
+	public boolean isLocationPermissionGranted() {
+		return mLocationPermissionGranted;
+	}
+
+	public boolean isLocationEnabled() {
+		return mLocationEnabled;
+	}
+
+	public boolean isLocationRequired() {
+		return mLocationRequired;
+	}
+
+	public boolean isBluetoothEnabled() {
+		return mBluetoothEnabled;
+	}
+}
@@ -31,146 +31,334 @@
 package no.nordicsemi.android.blinky.viewmodels;
 
 import android.arch.lifecycle.LiveData;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
-import android.support.annotation.Nullable;
+import android.view.Choreographer;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+import no.nordicsemi.android.blinky.utils.AdvertisingData;
+import no.nordicsemi.android.blinky.utils.MacAddress;
+import no.nordicsemi.android.support.v18.scanner.ScanRecord;
 import no.nordicsemi.android.support.v18.scanner.ScanResult;
 
 /**
  * This class keeps the current list of discovered Bluetooth LE devices matching filter.
- * If a new device has been found it is added to the list and the LiveData i observers are
- * notified. If a packet from a device that's already in the list is found, the RSSI and name
- * are updated and observers are also notified. Observer may check {@link #getUpdatedDeviceIndex()}
- * to find out the index of the updated device.
+ * If a new device has been found it is added to the list. If a packet from a device that's already
+ * in the list is found, the RSSI and name are updated. Changes are collected and observers are
+ * notified at most once per UI frame.
+ * <p>
+ * The list is changed by a single writer: scan results, restored devices and the expiry task
+ * must all be delivered on the same thread. The observer never reads the list being changed.
+ * Instead, the writer publishes an immutable {@link DeviceSnapshot} after each change, and the
+ * observer takes the latest one using {@link #takeSnapshot()}. Changes are recorded and
+ * snapshots double buffered by a {@link DeviceList}, so neither side ever waits for the other
+ * and no change is lost.
+ * <p>
+ * While scanning, devices not heard from within the expiry window are removed from the list.
+ * They are tracked using a timing wheel, which is checked once per tick, so all devices expired
+ * in a tick are removed as a single batch.
+ * <p>
+ * Devices may be presented sorted, see {@link SortOrder}. The sorted view is maintained
+ * incrementally: a device is repositioned only when it changes, and the move is reported
+ * to observers.
+ * <p>
+ * Only the list is published here. Bluetooth, Location and scanning state is published
+ * separately by {@link ScannerViewModel#getScannerState()}, so observers of the list are not
+ * notified when the state changes and the state observer is not notified on every packet.
  */
 public class ScannerLiveData extends LiveData<ScannerLiveData> {
-	private final List<ExtendedBluetoothDevice> mDevices = new ArrayList<>();
-	private Integer mUpdatedDeviceIndex;
+	/** Default time after which devices not heard from are removed, in milliseconds. */
+	/* package */ final static long DEFAULT_EXPIRY_WINDOW = 10000;
+	private final static long EXPIRY_TICK = 1000;
+	private final static int EXPIRY_SLOTS = 16;
+
+	private final DeviceList mDevices = new DeviceList();
+	private final DeviceRepository mRepository = DeviceRepository.getInstance();
+	/** Parser reused for all packets, which are delivered on the main thread. */
+	private final AdvertisingData mAdvertisingData = new AdvertisingData();
+	/** Filter applied to packets if the scanner could not filter them, or null. */
+	private ThermostatFilter mFilter;
+	private final ExpiryWheel mExpiryWheel = new ExpiryWheel(EXPIRY_TICK, EXPIRY_SLOTS);
+	private int[] mExpiredIndexes = new int[16];
+	private long mExpiryWindow = DEFAULT_EXPIRY_WINDOW;
+	private boolean mExpiryScheduled;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private volatile int mPublishedSize;
+	private final AtomicBoolean mFrameScheduled = new AtomicBoolean();
+	/** Number of devices found since created, including those removed since. */
+	private int mDevicesFound;
 	private boolean mScanningStarted;
-	private boolean mBluetoothEnabled;
-	private boolean mLocationEnabled;
 
-	/* package */ ScannerLiveData(final boolean bluetoothEnabled, final boolean locationEnabled) {
+	/* package */ ScannerLiveData() {
 		mScanningStarted = false;
-		mBluetoothEnabled = bluetoothEnabled;
-		mLocationEnabled = locationEnabled;
-		postValue(this);
-	}
-
-	/* package */ void refresh() {
 		postValue(this);
 	}
 
 	/* package */ void scanningStarted() {
 		mScanningStarted = true;
-		postValue(this);
+		// Devices could not have been heard while not scanning, give them a full window again
+		final long now = SystemClock.elapsedRealtime();
+		for (int i = 0; i < mDevices.size(); i++)
+			mDevices.get(i).setLastSeen(now);
+		if (mDevices.getSortOrder() == SortOrder.LAST_SEEN)
+			setSortOrder(SortOrder.LAST_SEEN);
+		scheduleExpiry();
 	}
 
 	/* package */ void scanningStopped() {
 		mScanningStarted = false;
-		postValue(this);
+		cancelExpiry();
 	}
 
-	/* package */ void bluetoothEnabled() {
-		mBluetoothEnabled = true;
-		postValue(this);
+	/**
+	 * Sets the time after which devices not heard from are removed from the list.
+	 *
+	 * @param window the window in milliseconds
+	 */
+	/* package */ void setExpiryWindow(final long window) {
+		mExpiryWindow = window;
+	}
+
+	/**
+	 * Sets the filter to be applied to received packets, if the scanner does not filter them.
+	 *
+	 * @param filter the filter, or null if the scanner filters packets
+	 */
+	/* package */ void setFilter(final ThermostatFilter filter) {
+		mFilter = filter;
+	}
+
+	/**
+	 * Sorts the devices in the given order. Observers get a reset.
+	 */
+	/* package */ void setSortOrder(@NonNull final SortOrder order) {
+		mDevices.setSortOrder(order);
+		publish();
+	}
+
+	/**
+	 * Returns the current sort order.
+	 */
+	@NonNull
+	public SortOrder getSortOrder() {
+		return mDevices.getSortOrder();
 	}
 
 	/* package */ void bluetoothDisabled() {
-		mBluetoothEnabled = false;
-		mUpdatedDeviceIndex = null;
 		mDevices.clear();
-		postValue(this);
+		mRepository.clear();
+		mExpiryWheel.clear();
+		publish();
 	}
 
-	/* package */ void setLocationEnabled(final boolean enabled) {
-		mLocationEnabled = enabled;
-		postValue(this);
+	/* package */ void deviceDiscovered(final ScanResult result) {
+		update(result);
+		publish();
 	}
 
-	/* package */ void deviceDiscovered(final ScanResult result) {
-		ExtendedBluetoothDevice device;
+	/**
+	 * Adds or updates devices from a batch of scan results in a single pass. When the batch
+	 * contains more packets from the same device, the newest one is used.
+	 *
+	 * @param results results gathered since the last batch
+	 */
+	/* package */ void devicesDiscovered(final List<ScanResult> results) {
+		for (int i = 0; i < results.size(); i++)
+			update(results.get(i));
+		publish();
+	}
 
-		final int index = indexOf(result);
-		if (index == -1) {
-			device = new ExtendedBluetoothDevice(result);
-			mDevices.add(device);
-			mUpdatedDeviceIndex = null;
-		} else {
-			device = mDevices.get(index);
-			mUpdatedDeviceIndex = index;
+	/**
+	 * Adds devices restored from the cache of recently seen devices. Devices already found
+	 * by the scanner are skipped.
+	 *
+	 * @param entries the cached entries
+	 */
+	/* package */ void devicesRestored(@NonNull final List<SeenDevicesCache.Entry> entries) {
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		if (adapter == null || entries.isEmpty())
+			return;
+
+		// Cached times are wall clock times, devices use time since boot
+		final long nowMillis = System.currentTimeMillis();
+		final long nowNanos = SystemClock.elapsedRealtimeNanos();
+		for (final SeenDevicesCache.Entry entry : entries) {
+			if (mDevices.indexOf(entry.address) != -1)
+				continue;
+			final long timestampNanos = Math.max(0, nowNanos - (nowMillis - entry.lastSeen) * 1000000L);
+			final BluetoothDevice device = adapter.getRemoteDevice(MacAddress.toString(entry.address));
+			final ExtendedBluetoothDevice restored = new ExtendedBluetoothDevice(device, entry.name, entry.rssi, timestampNanos);
+			added(entry.address, restored);
 		}
-		// Update RSSI and name
-		device.setRssi(result.getRssi());
-		device.setName(result.getScanRecord().getDeviceName());
+		scheduleExpiry();
+		publish();
+	}
 
-		postValue(this);
+	/**
+	 * Returns the number of devices found since this object was created. The value grows
+	 * whenever a new device is found, also if one found earlier is found again after it expired.
+	 */
+	/* package */ int getDevicesFound() {
+		return mDevicesFound;
 	}
 
 	/**
-	 * Returns the list of devices.
-	 * @return current list of devices discovered
+	 * Returns the current devices as cache entries.
 	 */
 	@NonNull
-	public List<ExtendedBluetoothDevice> getDevices() {
-		return mDevices;
+	/* package */ List<SeenDevicesCache.Entry> toCacheEntries() {
+		final long nowMillis = System.currentTimeMillis();
+		final long nowNanos = SystemClock.elapsedRealtimeNanos();
+		final List<SeenDevicesCache.Entry> entries = new ArrayList<>(mDevices.size());
+		for (int i = 0; i < mDevices.size(); i++) {
+			final ExtendedBluetoothDevice device = mDevices.get(i);
+			final long lastSeen = nowMillis - (nowNanos - device.getTimestampNanos()) / 1000000L;
+			entries.add(new SeenDevicesCache.Entry(device.getAddressKey(), device.getName(), device.getRssi(), lastSeen));
+		}
+		return entries;
 	}
 
 	/**
-	 * Returns null if a new device was added, or an index of the updated device.
+	 * Adds or updates the device from given result. Changes are recorded in the back snapshot.
 	 */
-	@Nullable
-	public Integer getUpdatedDeviceIndex() {
-		final Integer i = mUpdatedDeviceIndex;
-		mUpdatedDeviceIndex = null;
-		return i;
+	private void update(final ScanResult result) {
+		// Drop packets from other devices before anything is created for them
+		final ScanRecord record = result.getScanRecord();
+		mAdvertisingData.parse(record != null ? record.getBytes() : null);
+		if (mFilter != null && !mFilter.matches(mAdvertisingData))
+			return;
+
+		final long key = MacAddress.toLong(result.getDevice().getAddress());
+		final int index = mDevices.indexOf(key);
+		if (index == -1) {
+			added(key, new ExtendedBluetoothDevice(result));
+			scheduleExpiry();
+			return;
+		}
+
+		final ExtendedBluetoothDevice device = mDevices.get(index);
+		// Batched results are not guaranteed to be sorted, ignore older packets
+		if (result.getTimestampNanos() < device.getTimestampNanos())
+			return;
+		device.setTimestampNanos(result.getTimestampNanos());
+		device.setLastSeen(SystemClock.elapsedRealtime());
+
+		// Update RSSI and name. The row is rebound only if the signal icon or the name changes
+		final boolean levelChanged = device.addRssi(result.getRssi());
+		// Compare the name in place, a new String is decoded only if it has changed
+		final boolean nameChanged = !mAdvertisingData.nameEquals(device.getName());
+		if (nameChanged)
+			device.setName(mAdvertisingData.getName());
+		mDevices.changed(index, levelChanged, nameChanged);
 	}
 
 	/**
-	 * Returns whether the list is empty.
+	 * Adds a new device to the registry, the sorted view and the expiry wheel.
 	 */
-	public boolean isEmpty() {
-		return mDevices.isEmpty();
+	private void added(final long key, final ExtendedBluetoothDevice device) {
+		mDevices.add(key, device);
+		mDevicesFound++;
+		mRepository.put(device);
+		mExpiryWheel.schedule(key, device.getLastSeen() + mExpiryWindow);
 	}
 
 	/**
-	 * Returns whether scanning is in progress.
+	 * Publishes the current list, if it has changed, and schedules notifying the observers.
 	 */
-	public boolean isScanning() {
-		return mScanningStarted;
+	private void publish() {
+		final int size = mDevices.publish();
+		if (size == -1)
+			return;
+		mPublishedSize = size;
+		scheduleFrame();
 	}
 
 	/**
-	 * Returns whether Bluetooth adapter is enabled.
+	 * Returns the latest published snapshot of the list, or the one returned previously if
+	 * nothing has been published since. The previous snapshot is given back to the writer and
+	 * must not be used any more. Changes in the returned snapshot lead from the previous one,
+	 * unless it is the same snapshot, which can be checked using {@link DeviceSnapshot#getVersion()}.
+	 * <p>
+	 * This method must be called on the main thread, by a single observer.
 	 */
-	public boolean isBluetoothEnabled() {
-		return mBluetoothEnabled;
+	@NonNull
+	public DeviceSnapshot takeSnapshot() {
+		return mDevices.takeSnapshot();
 	}
 
 	/**
-	 * Returns whether Location is enabled.
+	 * Returns whether the last published list is empty.
 	 */
-	public boolean isLocationEnabled() {
-		return mLocationEnabled;
+	public boolean isEmpty() {
+		return mPublishedSize == 0;
 	}
 
 	/**
-	 * Finds the index of existing devices on the scan results list.
-	 *
-	 * @param result scan result
-	 * @return index of -1 if not found
+	 * Returns whether scanning is in progress.
 	 */
-	private int indexOf(final ScanResult result) {
-		int i = 0;
-		for (final ExtendedBluetoothDevice device : mDevices) {
-			if (device.matches(result))
-				return i;
-			i++;
+	public boolean isScanning() {
+		return mScanningStarted;
+	}
+
+	private void scheduleExpiry() {
+		if (mExpiryScheduled || !mScanningStarted || mExpiryWheel.isEmpty())
+			return;
+		mExpiryScheduled = true;
+		mHandler.postDelayed(mExpiryTask, mExpiryWheel.getTick());
+	}
+
+	private void cancelExpiry() {
+		mExpiryScheduled = false;
+		mHandler.removeCallbacks(mExpiryTask);
+	}
+
+	private final ExpiryWheel.DeadlineProvider mDeadlineProvider = key -> {
+		final int index = mDevices.indexOf(key);
+		if (index == -1)
+			return ExpiryWheel.NONE;
+		return mDevices.get(index).getLastSeen() + mExpiryWindow;
+	};
+
+	private final Runnable mExpiryTask = () -> {
+		mExpiryScheduled = false;
+		final int count = mExpiryWheel.advance(SystemClock.elapsedRealtime(), mDeadlineProvider);
+		if (count > 0) {
+			if (mExpiredIndexes.length < count)
+				mExpiredIndexes = new int[Math.max(count, mExpiredIndexes.length * 2)];
+			for (int i = 0; i < count; i++) {
+				final long key = mExpiryWheel.getExpired(i);
+				mExpiredIndexes[i] = mDevices.indexOf(key);
+				mRepository.remove(key);
+			}
+			Arrays.sort(mExpiredIndexes, 0, count);
+			mDevices.removeAll(mExpiredIndexes, count);
+			publish();
 		}
-		return -1;
+		scheduleExpiry();
+	};
+
+	/**
+	 * Schedules notifying the observers on the next frame, unless it has already been scheduled.
+	 * All packets received before that frame are delivered as a single change set.
+	 */
+	private void scheduleFrame() {
+		if (!mFrameScheduled.compareAndSet(false, true))
+			return;
+		// Choreographer must be obtained on the main thread
+		mHandler.post(() -> Choreographer.getInstance().postFrameCallback(mFrameCallback));
 	}
+
+	private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> {
+		mFrameScheduled.set(false);
+		setValue(this);
+	};
 }
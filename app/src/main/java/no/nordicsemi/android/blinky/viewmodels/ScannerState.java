@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Immutable snapshot of everything the scanner screen shows besides the device list:
+ * the Location permission, Bluetooth and Location state, whether scanning is in progress and
+ * whether any device has been found. There are only few possible states, so all instances
+ * are created up front and {@link #of(int)} never allocates.
+ */
+public final class ScannerState {
+	/* package */ static final int LOCATION_PERMISSION_GRANTED = 1;
+	/* package */ static final int BLUETOOTH_ENABLED = 1 << 1;
+	/* package */ static final int LOCATION_ENABLED = 1 << 2;
+	/* package */ static final int LOCATION_REQUIRED = 1 << 3;
+	/* package */ static final int SCANNING = 1 << 4;
+	/* package */ static final int EMPTY = 1 << 5;
+
+	private static final ScannerState[] STATES = new ScannerState[1 << 6];
+	static {
+		for (int i = 0; i < STATES.length; i++)
+			STATES[i] = new ScannerState(i);
+	}
+
+	private final int bits;
+
+	private ScannerState(final int bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Returns the state with given bits set.
+	 */
+	@NonNull
+	/* package */ static ScannerState of(final int bits) {
+		return STATES[bits & (STATES.length - 1)];
+	}
+
+	/**
+	 * Returns whether the Location permission has been granted.
+	 */
+	public boolean isLocationPermissionGranted() {
+		return (bits & LOCATION_PERMISSION_GRANTED) != 0;
+	}
+
+	/**
+	 * Returns whether Bluetooth adapter is enabled.
+	 */
+	public boolean isBluetoothEnabled() {
+		return (bits & BLUETOOTH_ENABLED) != 0;
+	}
+
+	/**
+	 * Returns whether Location is enabled.
+	 */
+	public boolean isLocationEnabled() {
+		return (bits & LOCATION_ENABLED) != 0;
+	}
+
+	/**
+	 * Returns whether Location may be required in order to scan on this phone.
+	 */
+	public boolean isLocationRequired() {
+		return (bits & LOCATION_REQUIRED) != 0;
+	}
+
+	/**
+	 * Returns whether scanning is in progress.
+	 */
+	public boolean isScanning() {
+		return (bits & SCANNING) != 0;
+	}
+
+	/**
+	 * Returns whether the list of devices is empty.
+	 */
+	public boolean isEmpty() {
+		return (bits & EMPTY) != 0;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		return o instanceof ScannerState && ((ScannerState) o).bits == bits;
+	}
+
+	@Override
+	public int hashCode() {
+		return bits;
+	}
+
+	@Override
+	public String toString() {
+		return "ScannerState{0x" + Integer.toHexString(bits) + "}";
+	}
+}
@@ -32,19 +32,24 @@ package no.nordicsemi.android.blinky.viewmodels;
 
 import android.app.Application;
 import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
 import android.bluetooth.BluetoothAdapter;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.location.LocationManager;
-import android.os.ParcelUuid;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.support.annotation.NonNull;
 import android.util.Log;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-import no.nordicsemi.android.blinky.profile.BlinkyManager;
+import no.nordicsemi.android.blinky.utils.LiveDataUtils;
 import no.nordicsemi.android.blinky.utils.Utils;
 import no.nordicsemi.android.support.v18.scanner.BluetoothLeScannerCompat;
 import no.nordicsemi.android.support.v18.scanner.ScanCallback;
@@ -54,18 +59,60 @@ import no.nordicsemi.android.support.v18.scanner.ScanSettings;
 
 public class ScannerViewModel extends AndroidViewModel {
 	private final static  String TAG="ScannerViewModel";
-	/** MutableLiveData containing the scanner state to notify MainActivity. */
+	/** LiveData containing the list of devices, notified at most once per frame. */
 	private final ScannerLiveData mScannerLiveData;
+	/** The scanner state, set whenever any of its values may have changed. */
+	private final MediatorLiveData<ScannerState> mScannerState = new MediatorLiveData<>();
+	/** The scanner state, notified only when it has changed. */
+	private final LiveData<ScannerState> mDistinctScannerState = LiveDataUtils.distinctUntilChanged(mScannerState);
+	/** Devices seen in previous sessions. */
+	private final SeenDevicesCache mSeenDevicesCache;
+	/** Cached environment state, checked on every received packet. */
+	private final ScannerEnvironment mEnvironment;
+	/** Decides which packets come from thermostats. */
+	private final ThermostatFilter mFilter;
+	/** Chooses the scan mode and keeps track of the scan start budget. */
+	private final ScanScheduler mScanScheduler = new ScanScheduler(ScanThrottle.getInstance());
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	/** Whether the scan will be started when the budget allows. */
+	private boolean mScanStartPending;
+	/** Time after which devices not heard from are removed, in milliseconds. */
+	private long mExpiryWindow = ScannerLiveData.DEFAULT_EXPIRY_WINDOW;
 
-	public ScannerLiveData getScannerState() {
+	/**
+	 * Returns the LiveData with Bluetooth, Location and scanning state. Observers are notified
+	 * only when the state changes, not when devices are found or updated.
+	 */
+	public LiveData<ScannerState> getScannerState() {
+		return mDistinctScannerState;
+	}
+
+	/**
+	 * Returns the LiveData with the list of devices found.
+	 */
+	public ScannerLiveData getDevices() {
 		return mScannerLiveData;
 	}
 
 	public ScannerViewModel(final Application application) {
 		super(application);
 
-		mScannerLiveData = new ScannerLiveData(Utils.isBleEnabled(), Utils.isLocationEnabled(application));
+		mEnvironment = new ScannerEnvironment(application);
+		mFilter = new ThermostatFilter(application);
+		mScannerLiveData = new ScannerLiveData();
+		// The list affects the state only when it becomes empty or not empty
+		mScannerState.addSource(mScannerLiveData, devices -> {
+			final ScannerState state = mScannerState.getValue();
+			if (state == null || state.isEmpty() != devices.isEmpty())
+				publishState();
+		});
+		publishState();
 		registerBroadcastReceivers(application);
+
+		// Show devices seen recently before the first packet arrives. The cache is usually
+		// already loaded by the splash screen.
+		mSeenDevicesCache = SeenDevicesCache.getInstance(application);
+		mSeenDevicesCache.load(mScannerLiveData::devicesRestored);
 	}
 
 	@Override
@@ -76,86 +123,247 @@ public class ScannerViewModel extends AndroidViewModel {
 		if (Utils.isMarshmallowOrAbove()) {
 			getApplication().unregisterReceiver(mLocationProviderChangedReceiver);
 		}
+		mHandler.removeCallbacks(mPendingScanStart);
+		mHandler.removeCallbacks(mScanModeCheck);
+		// Devices will not be updated any more
+		DeviceRepository.getInstance().clear();
+	}
+
+	public ScannerEnvironment getEnvironment() {
+		return mEnvironment;
 	}
 
 	public void refresh() {
-		mScannerLiveData.refresh();
+		mEnvironment.refresh(getApplication());
+		publishState();
 	}
 
 	/**
-	 * Start scanning for Bluetooth devices.
+	 * Returns the order in which devices are presented.
+	 */
+	@NonNull
+	public SortOrder getSortOrder() {
+		return mScannerLiveData.getSortOrder();
+	}
+
+	/**
+	 * Sets the order in which devices are presented.
+	 *
+	 * @param order the new order
+	 */
+	public void setSortOrder(@NonNull final SortOrder order) {
+		if (mScannerLiveData.getSortOrder() != order)
+			mScannerLiveData.setSortOrder(order);
+	}
+
+	/**
+	 * Sets the time after which devices not heard from are removed from the list. While results
+	 * are batched, the window is extended to two report delays, so that a device is not removed
+	 * only because it has not been reported in a batch yet.
+	 *
+	 * @param window the window in milliseconds
+	 */
+	public void setExpiryWindow(final long window) {
+		if (window <= 0)
+			throw new IllegalArgumentException("Invalid expiry window: " + window);
+		mExpiryWindow = window;
+		updateExpiryWindow();
+	}
+
+	/**
+	 * Sets the delay between batches of scan results once scanning has stepped down to low power
+	 * mode. Batching saves CPU wake-ups when the scanner screen stays open for a long time.
+	 * The delay is applied when the scan is started or its mode changes next.
+	 *
+	 * @param delay the delay in milliseconds, 0 to disable batching
+	 */
+	public void setBatchReportDelay(final long delay) {
+		if (delay < 0)
+			throw new IllegalArgumentException("Invalid report delay: " + delay);
+		mScanScheduler.setReportDelay(delay);
+	}
+
+	/**
+	 * Start scanning for Bluetooth devices. Scanning starts in low latency mode and steps down
+	 * to lower power modes when no new devices are found, see {@link ScanScheduler}. In low power
+	 * mode results are delivered in batches, see {@link #setBatchReportDelay(long)}.
+	 * If the app has started scanning too many times recently, the start is postponed until
+	 * it would not be throttled by the system.
 	 */
 	public void startScan() {
-		if (mScannerLiveData.isScanning()) {
+		if (mScannerLiveData.isScanning() || mScanStartPending) {
+			return;
+		}
+
+		mScanScheduler.reset(SystemClock.elapsedRealtime());
+		startScanner();
+	}
+
+	/**
+	 * stop scanning for bluetooth devices.
+	 */
+	public void stopScan() {
+		mScanStartPending = false;
+		mHandler.removeCallbacks(mPendingScanStart);
+		mHandler.removeCallbacks(mScanModeCheck);
+
+		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
+		scanner.stopScan(scanCallback);
+		mScannerLiveData.scanningStopped();
+		publishState();
+		mSeenDevicesCache.save(mScannerLiveData.toCacheEntries());
+	}
+
+	/**
+	 * Publishes the current state. Observers of {@link #getScannerState()} are notified only
+	 * if it differs from the previous one.
+	 */
+	private void publishState() {
+		int bits = 0;
+		if (mEnvironment.isLocationPermissionGranted())
+			bits |= ScannerState.LOCATION_PERMISSION_GRANTED;
+		if (mEnvironment.isBluetoothEnabled())
+			bits |= ScannerState.BLUETOOTH_ENABLED;
+		if (mEnvironment.isLocationEnabled())
+			bits |= ScannerState.LOCATION_ENABLED;
+		if (mEnvironment.isLocationRequired())
+			bits |= ScannerState.LOCATION_REQUIRED;
+		if (mScannerLiveData.isScanning())
+			bits |= ScannerState.SCANNING;
+		if (mScannerLiveData.isEmpty())
+			bits |= ScannerState.EMPTY;
+		mScannerState.setValue(ScannerState.of(bits));
+	}
+
+	private void updateExpiryWindow() {
+		// A device must be missing from at least two batches before it expires
+		mScannerLiveData.setExpiryWindow(Math.max(mExpiryWindow, 2 * mScanScheduler.getReportDelay()));
+	}
+
+	/**
+	 * Starts the scanner in the mode chosen by the scheduler, or postpones the start if the
+	 * scan budget has been used up.
+	 */
+	private void startScanner() {
+		final long now = SystemClock.elapsedRealtime();
+		final long delay = mScanScheduler.getStartDelay(now);
+		if (delay > 0) {
+			Log.w(TAG, "Too many scans started recently, starting in " + delay + " ms");
+			mScanStartPending = true;
+			mHandler.postDelayed(mPendingScanStart, delay);
 			return;
 		}
+		mScanStartPending = false;
+
+		final long reportDelay = mScanScheduler.getReportDelay();
+		updateExpiryWindow();
 
 		// Scanning settings
 		final ScanSettings settings = new ScanSettings.Builder()
-				.setScanMode(ScanSettings.SCAN_MODE_LOW_LATENCY)
-				// Refresh the devices list every second
-				.setReportDelay(0)
-				// Hardware filtering has some issues on selected devices
-				.setUseHardwareBatchingIfSupported(false)
+				.setScanMode(mScanScheduler.getScanMode())
+				// In batch mode results are delivered to onBatchScanResults(...)
+				.setReportDelay(reportDelay)
+				// Hardware filtering has some issues on selected devices, use it only for batching
+				.setUseHardwareBatchingIfSupported(reportDelay > 0)
 				// Samsung S6 and S6 Edge report equal value of RSSI for all devices. In this app we ignore the RSSI.
 					/*.setUseHardwareBatchingIfSupported(false)*/
 				.build();
 
-		// Let's use the filter to scan only for Blinky devices
-		final ParcelUuid uuid = new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE);
-		final List<ScanFilter> filters = new ArrayList<>();
-		/* Filter on UUID not work !!!!
-		ScanFilter aFilter = new ScanFilter.Builder()
-				.setServiceUuid(new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE),
-								new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE_MASK))
-				.setDeviceName("THERMOSTAT")
-				.build();
-		filters.add(aFilter);
-		*/
-		ScanFilter aFilter = new ScanFilter.Builder()
-				.setServiceUuid(null)
-				.setDeviceName("THERMOSTAT")
-				.build();
-		filters.add(aFilter);
+		// Let's use the filter to scan only for thermostats. If the controller can't apply
+		// filters, packets are filtered in software before anything is allocated for them.
+		// With prefix patterns the scan runs without filters: filters given to the controller
+		// would drop devices matched only by a name prefix before the software filter sees them
+		final List<ScanFilter> filters;
+		if (ThermostatFilter.isOffloadedFilteringSupported() && mFilter.canBeOffloaded()) {
+			filters = mFilter.getScanFilters();
+			mScannerLiveData.setFilter(null);
+		} else {
+			filters = Collections.emptyList();
+			mScannerLiveData.setFilter(mFilter);
+		}
 		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
 		scanner.startScan(filters, settings, scanCallback);
-		mScannerLiveData.scanningStarted();
-		Log.v(TAG, "start scanning"+filters.toString());
+		mScanScheduler.onScanStarted(now);
+		if (!mScannerLiveData.isScanning()) {
+			mScannerLiveData.scanningStarted();
+			publishState();
+		}
+		mHandler.removeCallbacks(mScanModeCheck);
+		mHandler.postDelayed(mScanModeCheck, ScanScheduler.CHECK_INTERVAL);
+		Log.v(TAG, "start scanning in mode " + mScanScheduler.getScanMode() + ", report delay " + reportDelay + " " + filters.toString());
 	}
 
 	/**
-	 * stop scanning for bluetooth devices.
+	 * Restarts the scanner if the scheduler decides the scan mode should change.
 	 */
-	public void stopScan() {
-		final BluetoothLeScannerCompat scanner = BluetoothLeScannerCompat.getScanner();
-		scanner.stopScan(scanCallback);
-		mScannerLiveData.scanningStopped();
+	private void checkScanMode() {
+		if (!mScannerLiveData.isScanning())
+			return;
+		final int mode = mScanScheduler.getNewScanMode(SystemClock.elapsedRealtime());
+		if (mode != -1) {
+			BluetoothLeScannerCompat.getScanner().stopScan(scanCallback);
+			// This schedules the next check
+			startScanner();
+		} else {
+			mHandler.removeCallbacks(mScanModeCheck);
+			mHandler.postDelayed(mScanModeCheck, ScanScheduler.CHECK_INTERVAL);
+		}
 	}
 
+	private final Runnable mPendingScanStart = this::startScanner;
+
+	private final Runnable mScanModeCheck = this::checkScanMode;
+
 	private final ScanCallback scanCallback = new ScanCallback() {
 		@Override
 		public void onScanResult(final int callbackType, final ScanResult result) {
 			// If the packet has been obtained while Location was disabled, mark Location as not required
-			if (Utils.isLocationRequired(getApplication()) && !Utils.isLocationEnabled(getApplication()))
-				Utils.markLocationNotRequired(getApplication());
+			if (mEnvironment.isLocationRequired() && !mEnvironment.isLocationEnabled()) {
+				mEnvironment.markLocationNotRequired(getApplication());
+				publishState();
+			}
 
+			final int found = mScannerLiveData.getDevicesFound();
 			mScannerLiveData.deviceDiscovered(result);
-			Log.v(TAG, "start scanning get result");
+			if (mScannerLiveData.getDevicesFound() != found)
+				onNewDevice();
 		}
 
 		@Override
 		public void onBatchScanResults(final List<ScanResult> results) {
-			// Batch scan is disabled (report delay = 0)
+			// Called only in batch mode (report delay > 0)
+			if (results.isEmpty())
+				return;
+
+			if (mEnvironment.isLocationRequired() && !mEnvironment.isLocationEnabled()) {
+				mEnvironment.markLocationNotRequired(getApplication());
+				publishState();
+			}
+
+			final int found = mScannerLiveData.getDevicesFound();
+			mScannerLiveData.devicesDiscovered(results);
+			if (mScannerLiveData.getDevicesFound() != found)
+				onNewDevice();
 		}
 
 		@Override
 		public void onScanFailed(final int errorCode) {
 			// TODO This should be handled
 			mScannerLiveData.scanningStopped();
+			publishState();
 			Log.v(TAG, "scanning Failed");
 		}
 	};
 
+	/**
+	 * A new device may be followed by more, go back to low latency mode.
+	 */
+	private void onNewDevice() {
+		mScanScheduler.onNewDevice(SystemClock.elapsedRealtime());
+		if (mScanScheduler.getScanMode() != ScanSettings.SCAN_MODE_LOW_LATENCY)
+			checkScanMode();
+	}
+
 	/**
 	 * Register for required broadcast receivers.
 	 */
@@ -173,7 +381,8 @@ public class ScannerViewModel extends AndroidViewModel {
 		@Override
 		public void onReceive(final Context context, final Intent intent) {
 			final boolean enabled = Utils.isLocationEnabled(context);
-			mScannerLiveData.setLocationEnabled(enabled);
+			mEnvironment.setLocationEnabled(enabled);
+			publishState();
 		}
 	};
 
@@ -188,14 +397,17 @@ public class ScannerViewModel extends AndroidViewModel {
 
 			switch (state) {
 				case BluetoothAdapter.STATE_ON:
-					mScannerLiveData.bluetoothEnabled();
+					mEnvironment.setBluetoothEnabled(true);
+					publishState();
 					break;
 				case BluetoothAdapter.STATE_TURNING_OFF:
 				case BluetoothAdapter.STATE_OFF:
+					mEnvironment.setBluetoothEnabled(false);
 					if (previousState != BluetoothAdapter.STATE_TURNING_OFF && previousState != BluetoothAdapter.STATE_OFF) {
 						stopScan();
 						mScannerLiveData.bluetoothDisabled();
 					}
+					publishState();
 					break;
 			}
 		}
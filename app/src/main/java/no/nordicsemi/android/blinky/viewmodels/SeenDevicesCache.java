@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.util.AtomicFile;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A small file with thermostats seen recently, so the scanner can show them immediately on the
+ * next start, before the first advertising packet is received. The file is read and written on
+ * a background thread. Devices saved when a scan stops are merged with those seen before, so
+ * devices out of range during the last scan are kept until they are too old. The file is replaced
+ * atomically, so a crash while writing leaves the previous version.
+ */
+public class SeenDevicesCache {
+	private final static String TAG = "SeenDevicesCache";
+	private final static String FILE_NAME = "seen_devices.bin";
+	private final static int VERSION = 1;
+	/** Maximum number of devices saved, the most recently seen ones are kept. */
+	private final static int MAX_ENTRIES = 64;
+	/** Devices not seen for this time are not restored. */
+	private final static long MAX_AGE = 7 * 24 * 60 * 60 * 1000L; // ms
+
+	public static class Entry {
+		public final long address;
+		public final String name;
+		public final int rssi;
+		/** Wall clock time the device was last seen, in milliseconds. */
+		public final long lastSeen;
+
+		public Entry(final long address, final String name, final int rssi, final long lastSeen) {
+			this.address = address;
+			this.name = name;
+			this.rssi = rssi;
+			this.lastSeen = lastSeen;
+		}
+	}
+
+	@FunctionalInterface
+	public interface OnLoadedListener {
+		void onLoaded(@NonNull final List<Entry> entries);
+	}
+
+	private static SeenDevicesCache sInstance;
+
+	private final AtomicFile mFile;
+	private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	/** Entries read from the file, or null if not loaded yet. Guarded by this. */
+	private List<Entry> mEntries;
+	private final List<OnLoadedListener> mListeners = new ArrayList<>();
+	private boolean mLoading;
+
+	/**
+	 * Returns the cache, creating it on the first call.
+	 */
+	@NonNull
+	public static synchronized SeenDevicesCache getInstance(@NonNull final Context context) {
+		if (sInstance == null)
+			sInstance = new SeenDevicesCache(context.getApplicationContext());
+		return sInstance;
+	}
+
+	private SeenDevicesCache(final Context context) {
+		mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+	}
+
+	/**
+	 * Starts reading the file in background, if not started yet.
+	 */
+	public synchronized void preload() {
+		if (mEntries != null || mLoading)
+			return;
+		mLoading = true;
+		mExecutor.execute(() -> {
+			final List<Entry> read = read();
+			final List<Entry> entries;
+			final List<OnLoadedListener> listeners;
+			synchronized (this) {
+				// Entries saved in the meantime are newer than those in the file
+				if (mEntries == null)
+					mEntries = read;
+				entries = mEntries;
+				mLoading = false;
+				listeners = new ArrayList<>(mListeners);
+				mListeners.clear();
+			}
+			if (!listeners.isEmpty())
+				mHandler.post(() -> {
+					for (final OnLoadedListener listener : listeners)
+						listener.onLoaded(entries);
+				});
+		});
+	}
+
+	/**
+	 * Delivers the cached entries to the listener on the main thread, loading them if needed.
+	 */
+	public void load(@NonNull final OnLoadedListener listener) {
+		final List<Entry> entries;
+		synchronized (this) {
+			entries = mEntries;
+			if (entries == null)
+				mListeners.add(listener);
+		}
+		if (entries != null)
+			listener.onLoaded(entries);
+		else
+			preload();
+	}
+
+	/**
+	 * Merges the entries with the saved ones and saves the result in background. Only the most
+	 * recently seen devices are kept. Devices not seen for {@link #MAX_AGE} are dropped.
+	 */
+	public void save(@NonNull final List<Entry> entries) {
+		if (entries.isEmpty())
+			return;
+		final List<Entry> copy = new ArrayList<>(entries);
+		synchronized (this) {
+			if (mEntries != null) {
+				final List<Entry> merged = merge(mEntries, copy);
+				mEntries = merged;
+				mExecutor.execute(() -> write(merged));
+				return;
+			}
+		}
+		// Merge with the file once read. Tasks run in order, so a pending preload is done first
+		mExecutor.execute(() -> {
+			List<Entry> saved;
+			synchronized (this) {
+				saved = mEntries;
+			}
+			if (saved == null)
+				saved = read();
+			final List<Entry> merged = merge(saved, copy);
+			synchronized (this) {
+				mEntries = merged;
+			}
+			write(merged);
+		});
+	}
+
+	/**
+	 * Returns the saved entries updated with the new ones, most recently seen first.
+	 */
+	private static List<Entry> merge(final List<Entry> saved, final List<Entry> entries) {
+		final Map<Long, Entry> devices = new HashMap<>();
+		for (final Entry entry : saved)
+			devices.put(entry.address, entry);
+		for (final Entry entry : entries) {
+			final Entry previous = devices.get(entry.address);
+			if (previous == null || previous.lastSeen <= entry.lastSeen)
+				devices.put(entry.address, entry);
+		}
+
+		final long now = System.currentTimeMillis();
+		final List<Entry> merged = new ArrayList<>(devices.size());
+		for (final Entry entry : devices.values()) {
+			if (now - entry.lastSeen <= MAX_AGE)
+				merged.add(entry);
+		}
+		Collections.sort(merged, (a, b) -> Long.compare(b.lastSeen, a.lastSeen));
+		if (merged.size() > MAX_ENTRIES)
+			merged.subList(MAX_ENTRIES, merged.size()).clear();
+		return Collections.unmodifiableList(merged);
+	}
+
+	private List<Entry> read() {
+		final List<Entry> entries = new ArrayList<>();
+		final long now = System.currentTimeMillis();
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(mFile.openRead()));
+			if (in.readInt() != VERSION)
+				return Collections.unmodifiableList(entries);
+			final int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				final long address = in.readLong();
+				final int rssi = in.readByte();
+				final long lastSeen = in.readLong();
+				final String name = in.readBoolean() ? in.readUTF() : null;
+				if (now - lastSeen <= MAX_AGE)
+					entries.add(new Entry(address, name, rssi, lastSeen));
+			}
+		} catch (final FileNotFoundException e) {
+			// Nothing saved yet
+		} catch (final IOException e) {
+			Log.w(TAG, "Reading cache failed", e);
+		} finally {
+			close(in);
+		}
+		return Collections.unmodifiableList(entries);
+	}
+
+	private void write(final List<Entry> entries) {
+		FileOutputStream stream = null;
+		try {
+			stream = mFile.startWrite();
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (final Entry entry : entries) {
+				out.writeLong(entry.address);
+				out.writeByte(entry.rssi);
+				out.writeLong(entry.lastSeen);
+				out.writeBoolean(entry.name != null);
+				if (entry.name != null)
+					out.writeUTF(entry.name);
+			}
+			out.flush();
+			// Replaces the file only once everything has been written
+			mFile.finishWrite(stream);
+		} catch (final IOException e) {
+			Log.w(TAG, "Writing cache failed", e);
+			if (stream != null)
+				mFile.failWrite(stream);
+		}
+	}
+
+	private static void close(final Closeable closeable) {
+		if (closeable == null)
+			return;
+		try {
+			closeable.close();
+		} catch (final IOException e) {
+			// do nothing
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+
+/**
+ * Passes snapshots of the device list from a single writer to a single observer. The writer
+ * records changes using {@link #changes()} and publishes them with {@link #publish(List)},
+ * the observer takes the latest snapshot using {@link #take()}.
+ * <p>
+ * Snapshots are double buffered: the observer holds one, the writer fills the other. A snapshot
+ * published but not yet taken is taken back by the writer, which keeps adding changes to it,
+ * so neither side ever waits for the other and no change is lost. The snapshot released by the
+ * observer is reused by the writer.
+ */
+/* package */ class SnapshotBuffer {
+	/** The snapshot being filled by the writer, or null if no change has been made since the last publish. */
+	private DeviceSnapshot mBack;
+	/** The latest published snapshot, until taken by the observer or taken back by the writer. */
+	private final AtomicReference<DeviceSnapshot> mPublished = new AtomicReference<>();
+	/** A snapshot released by the observer, to be reused by the writer. */
+	private final AtomicReference<DeviceSnapshot> mReleased = new AtomicReference<>();
+	/** The snapshot held by the observer. Accessed only by the observer. */
+	private DeviceSnapshot mFront = new DeviceSnapshot();
+	private int mVersion;
+
+	/**
+	 * Returns the changes to be published with the next snapshot. If the last published snapshot
+	 * has not been taken by the observer yet, it is taken back and the changes are added to it.
+	 * Called by the writer.
+	 */
+	@NonNull
+	/* package */ DeviceChanges changes() {
+		if (mBack == null) {
+			mBack = mPublished.getAndSet(null);
+			if (mBack == null) {
+				mBack = mReleased.getAndSet(null);
+				if (mBack == null)
+					mBack = new DeviceSnapshot();
+				mBack.getChanges().clear();
+			}
+		}
+		return mBack.getChanges();
+	}
+
+	/**
+	 * Publishes the current list, if changes have been recorded since the last publish.
+	 * Called by the writer.
+	 *
+	 * @param devices the current list
+	 * @return true if a snapshot has been published
+	 */
+	/* package */ boolean publish(@NonNull final List<ExtendedBluetoothDevice> devices) {
+		if (mBack == null)
+			return false;
+		mBack.fill(devices, ++mVersion);
+		mPublished.set(mBack);
+		mBack = null;
+		return true;
+	}
+
+	/**
+	 * Returns the latest published snapshot, or the one returned previously if nothing has been
+	 * published since. The previous snapshot is given back to the writer and must not be used
+	 * any more. Called by the observer.
+	 */
+	@NonNull
+	/* package */ DeviceSnapshot take() {
+		final DeviceSnapshot snapshot = mPublished.getAndSet(null);
+		if (snapshot != null) {
+			mReleased.set(mFront);
+			mFront = snapshot;
+		}
+		return mFront;
+	}
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.text.TextUtils;
+
+import java.util.Comparator;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+
+/**
+ * Orders in which the scanner can present devices.
+ */
+public enum SortOrder {
+	/** Devices in the order they were found. */
+	DISCOVERY(null),
+	/** Strongest smoothed RSSI first. */
+	SIGNAL((a, b) -> {
+		final int result = Integer.compare(b.getRssi(), a.getRssi());
+		return result != 0 ? result : Long.compare(a.getAddressKey(), b.getAddressKey());
+	}),
+	/** Alphabetically by name, devices without a name last. */
+	NAME((a, b) -> {
+		final String nameA = a.getName();
+		final String nameB = b.getName();
+		final boolean emptyA = TextUtils.isEmpty(nameA);
+		final boolean emptyB = TextUtils.isEmpty(nameB);
+		int result = emptyA == emptyB ? 0 : emptyA ? 1 : -1;
+		if (result == 0 && !emptyA)
+			result = nameA.compareToIgnoreCase(nameB);
+		return result != 0 ? result : Long.compare(a.getAddressKey(), b.getAddressKey());
+	}),
+	/** Most recently heard first. */
+	LAST_SEEN((a, b) -> {
+		final int result = Long.compare(b.getLastSeen(), a.getLastSeen());
+		return result != 0 ? result : Long.compare(a.getAddressKey(), b.getAddressKey());
+	});
+
+	private final Comparator<ExtendedBluetoothDevice> mComparator;
+
+	SortOrder(final Comparator<ExtendedBluetoothDevice> comparator) {
+		mComparator = comparator;
+	}
+
+	/**
+	 * Returns the comparator, or null for {@link #DISCOVERY}, where the order is given
+	 * by the position in the registry.
+	 */
+	/* package */ Comparator<ExtendedBluetoothDevice> getComparator() {
+		return mComparator;
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import no.nordicsemi.android.blinky.adapter.ExtendedBluetoothDevice;
+
+/**
+ * A sorted view over the {@link DeviceRegistry}. The view keeps the registry index of the device
+ * shown at each position and the inverse mapping, both in primitive arrays. When a device
+ * changes, only that device is repositioned: its neighbours are compared first and, if it is out
+ * of order, the new position is found using binary search and the devices in between are
+ * shifted by one.
+ * <p>
+ * In {@link SortOrder#DISCOVERY} order the position of each device equals its registry index.
+ */
+/* package */ class SortedDeviceView extends AbstractList<ExtendedBluetoothDevice> {
+	private final DeviceRegistry mRegistry;
+	/** Registry indexes of devices at each position. */
+	private int[] mOrder = new int[64];
+	/** Positions of devices at each registry index. */
+	private int[] mPositions = new int[64];
+	private int mSize;
+	private SortOrder mSortOrder = SortOrder.DISCOVERY;
+	private Comparator<ExtendedBluetoothDevice> mComparator;
+
+	/* package */ SortedDeviceView(@NonNull final DeviceRegistry registry) {
+		mRegistry = registry;
+	}
+
+	@Override
+	public ExtendedBluetoothDevice get(final int position) {
+		return mRegistry.get(mOrder[position]);
+	}
+
+	@Override
+	public int size() {
+		return mSize;
+	}
+
+	/* package */ SortOrder getSortOrder() {
+		return mSortOrder;
+	}
+
+	/**
+	 * Sorts all devices again using the given order. This should also be called when sort keys
+	 * of many devices have changed at once.
+	 */
+	/* package */ void setSortOrder(@NonNull final SortOrder order) {
+		mSortOrder = order;
+		mComparator = order.getComparator();
+		if (mComparator == null) {
+			for (int i = 0; i < mSize; i++)
+				mOrder[i] = i;
+		} else {
+			// Sorting all devices is rare, boxing the indexes is fine here
+			final Integer[] indexes = new Integer[mSize];
+			for (int i = 0; i < mSize; i++)
+				indexes[i] = i;
+			Arrays.sort(indexes, (a, b) -> mComparator.compare(mRegistry.get(a), mRegistry.get(b)));
+			for (int i = 0; i < mSize; i++)
+				mOrder[i] = indexes[i];
+		}
+		for (int i = 0; i < mSize; i++)
+			mPositions[mOrder[i]] = i;
+	}
+
+	/**
+	 * Returns the position of the device with given registry index.
+	 */
+	/* package */ int positionOf(final int index) {
+		return mPositions[index];
+	}
+
+	/**
+	 * Inserts the device that has just been added to the registry.
+	 *
+	 * @param index the registry index of the new device
+	 * @return the position of the device
+	 */
+	/* package */ int inserted(final int index) {
+		ensureCapacity(mSize + 1);
+		final int position = mComparator == null ? mSize : search(mRegistry.get(index), 0, mSize);
+		System.arraycopy(mOrder, position, mOrder, position + 1, mSize - position);
+		mOrder[position] = index;
+		mSize++;
+		reindex(position, mSize);
+		return position;
+	}
+
+	/**
+	 * Moves the device with given registry index to its correct position after its sort key
+	 * has changed.
+	 *
+	 * @param index the registry index of the changed device
+	 * @return the new position of the device
+	 */
+	/* package */ int changed(final int index) {
+		final int position = mPositions[index];
+		if (mComparator == null)
+			return position;
+
+		final ExtendedBluetoothDevice device = mRegistry.get(index);
+		final int newPosition;
+		if (position > 0 && mComparator.compare(device, get(position - 1)) < 0) {
+			newPosition = search(device, 0, position);
+			System.arraycopy(mOrder, newPosition, mOrder, newPosition + 1, position - newPosition);
+			mOrder[newPosition] = index;
+			reindex(newPosition, position + 1);
+		} else if (position < mSize - 1 && mComparator.compare(device, get(position + 1)) > 0) {
+			// The device itself is still at position, it is skipped by the search
+			newPosition = search(device, position + 1, mSize) - 1;
+			System.arraycopy(mOrder, position + 1, mOrder, position, newPosition - position);
+			mOrder[newPosition] = index;
+			reindex(position, newPosition + 1);
+		} else {
+			newPosition = position;
+		}
+		return newPosition;
+	}
+
+	/**
+	 * Removes devices that are being removed from the registry. Must be called before
+	 * {@link DeviceRegistry#removeAll(int[], int)}, as the registry indexes of the remaining
+	 * devices are updated here.
+	 *
+	 * @param indexes registry indexes of the removed devices, sorted ascending
+	 * @param count   number of indexes
+	 */
+	/* package */ void removeAll(final int[] indexes, final int count) {
+		int write = 0;
+		for (int read = 0; read < mSize; read++) {
+			final int index = mOrder[read];
+			// Number of removed devices with a lower index, or the index itself if removed
+			int low = 0, high = count;
+			while (low < high) {
+				final int mid = (low + high) >>> 1;
+				if (indexes[mid] < index)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			if (low < count && indexes[low] == index)
+				continue;
+			mOrder[write++] = index - low;
+		}
+		mSize = write;
+		for (int i = 0; i < mSize; i++)
+			mPositions[mOrder[i]] = i;
+	}
+
+	/**
+	 * Removes all devices from the view. The list is read-only for other users.
+	 */
+	/* package */ void reset() {
+		mSize = 0;
+	}
+
+	/**
+	 * Returns the first position in the given range holding a device that should be placed
+	 * after the given one.
+	 */
+	private int search(final ExtendedBluetoothDevice device, int low, int high) {
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (mComparator.compare(get(mid), device) <= 0)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private void reindex(final int from, final int to) {
+		for (int i = from; i < to; i++)
+			mPositions[mOrder[i]] = i;
+	}
+
+	private void ensureCapacity(final int capacity) {
+		if (capacity <= mOrder.length)
+			return;
+		final int length = Math.max(capacity, mOrder.length * 2);
+		mOrder = Arrays.copyOf(mOrder, length);
+		mPositions = Arrays.copyOf(mPositions, length);
+	}
+}
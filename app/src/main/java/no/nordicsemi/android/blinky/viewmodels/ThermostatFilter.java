@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ *
+ *  Redistributions of source code must retain the above copyright notice, this
+ *   list of conditions and the following disclaimer.
+ *
+ *  Redistributions in binary form must reproduce the above copyright notice,
+ *   this list of conditions and the following disclaimer in the documentation
+ *   and/or other materials provided with the distribution.
+ *
+ *  Neither the name of copyright holder nor the names of its
+ *   contributors may be used to endorse or promote products derived from
+ *   this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+ * FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+ * SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+ * CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+ * OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.nordicsemi.android.blinky.viewmodels;
+
+import android.bluetooth.BluetoothAdapter;
+import android.content.Context;
+import android.os.ParcelUuid;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import no.nordicsemi.android.blinky.R;
+import no.nordicsemi.android.blinky.profile.BlinkyManager;
+import no.nordicsemi.android.blinky.utils.AdvertisingData;
+import no.nordicsemi.android.blinky.utils.DevicePatternMatcher;
+import no.nordicsemi.android.blinky.utils.Utils;
+import no.nordicsemi.android.support.v18.scanner.ScanFilter;
+
+/**
+ * Decides which advertising packets come from thermostats. A thermostat advertises the
+ * {@link BlinkyManager#LBS_UUID_SERVICE} service or matches one of the patterns from the
+ * {@code scanner_device_patterns} resource, which cover older firmware generations.
+ * <p>
+ * If the Bluetooth controller supports offloaded filtering and all patterns can be expressed
+ * as scan filters, the filters are given to the controller, so other packets do not wake up
+ * the CPU at all. Otherwise the scan runs without filters and every packet is matched by
+ * {@link #matches(AdvertisingData)} on its raw bytes, before any object is created for it.
+ */
+/* package */ class ThermostatFilter {
+	/** 16-bit UUID of the thermostat service. */
+	private static final int SERVICE_UUID_16 =
+			(int) (BlinkyManager.LBS_UUID_SERVICE.getMostSignificantBits() >>> 32) & 0xFFFF;
+
+	private final DevicePatternMatcher mMatcher;
+
+	/* package */ ThermostatFilter(@NonNull final Context context) {
+		mMatcher = DevicePatternMatcher.compile(context.getResources().getStringArray(R.array.scanner_device_patterns));
+	}
+
+	/**
+	 * Returns whether filters given to the scanner are applied by the Bluetooth controller.
+	 */
+	/* package */ static boolean isOffloadedFilteringSupported() {
+		final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+		return Utils.isLollipopOrAbove() && adapter != null && adapter.isOffloadedFilteringSupported();
+	}
+
+	/**
+	 * Returns whether all conditions can be expressed as scan filters, see {@link #getScanFilters()}.
+	 */
+	/* package */ boolean canBeOffloaded() {
+		return !mMatcher.hasPrefixes();
+	}
+
+	/**
+	 * Returns filters to be given to the scanner. Packets matching any of them are reported.
+	 * Prefix patterns are not included.
+	 */
+	@NonNull
+	/* package */ List<ScanFilter> getScanFilters() {
+		final List<ScanFilter> filters = new ArrayList<>();
+		filters.add(new ScanFilter.Builder()
+				.setServiceUuid(new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE),
+						new ParcelUuid(BlinkyManager.LBS_UUID_SERVICE_MASK))
+				.build());
+		for (final String name : mMatcher.getExactNames()) {
+			filters.add(new ScanFilter.Builder()
+					.setDeviceName(name)
+					.build());
+		}
+		for (final int companyId : mMatcher.getManufacturerIds()) {
+			filters.add(new ScanFilter.Builder()
+					.setManufacturerData(companyId, new byte[0])
+					.build());
+		}
+		return filters;
+	}
+
+	/**
+	 * Matches the parsed packet against the service UUID and all patterns.
+	 *
+	 * @param data the parsed advertising data
+	 * @return true if the packet comes from a thermostat
+	 */
+	/* package */ boolean matches(@NonNull final AdvertisingData data) {
+		return data.hasServiceUuid(SERVICE_UUID_16) || mMatcher.matches(data);
+	}
+}